@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+
+/**
+ * {@link CancellableQuery} runs one content resolver query that can be cancelled from another
+ * thread, so the provider stops working on results that are no longer wanted. Cancellation needs
+ * API 16; on older platforms the query runs to completion and its result is dropped by the caller.
+ */
+final class CancellableQuery {
+
+    /**
+     * {@link CancellationSignal} on API 16 and up, null before. Kept as an Object so the class
+     * still loads on older platforms.
+     */
+    private final Object mSignal;
+
+    private volatile boolean mCanceled;
+
+    CancellableQuery() {
+        mSignal = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? newSignal() : null;
+    }
+
+    /**
+     * Run the query, see {@link ContentResolver#query(Uri, String[], String, String[], String)}.
+     * Throws an unchecked exception if the query is cancelled while it runs.
+     */
+    Cursor query(ContentResolver resolver, Uri uri, String[] projection, String selection,
+                 String[] selectionArgs, String sortOrder) {
+        if (mSignal != null) {
+            return query(resolver, uri, projection, selection, selectionArgs, sortOrder, mSignal);
+        }
+        return resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    /**
+     * Cancel the query, if it is running or as soon as it starts.
+     */
+    void cancel() {
+        mCanceled = true;
+        if (mSignal != null) {
+            cancel(mSignal);
+        }
+    }
+
+    /**
+     * Return whether {@link #cancel()} was called.
+     */
+    boolean isCanceled() {
+        return mCanceled;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Object newSignal() {
+        return new CancellationSignal();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Cursor query(ContentResolver resolver, Uri uri, String[] projection,
+                                String selection, String[] selectionArgs, String sortOrder,
+                                Object signal) {
+        return resolver.query(uri, projection, selection, selectionArgs, sortOrder,
+                (CancellationSignal) signal);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void cancel(Object signal) {
+        ((CancellationSignal) signal).cancel();
+    }
+}
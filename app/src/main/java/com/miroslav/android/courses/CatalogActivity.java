@@ -23,12 +23,17 @@ import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
+import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Bundle;
+import android.preference.PreferenceManager;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -39,7 +44,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.miroslav.android.courses.data.CourseContract;
-import com.miroslav.android.courses.data.CourseDbHelper;
+import com.miroslav.android.courses.data.CourseContract.SummaryEntry;
 
 import static com.miroslav.android.courses.data.CourseContract.CoursesEntry._ID;
 
@@ -54,11 +59,127 @@ public class CatalogActivity extends AppCompatActivity implements
      */
     private static final int COURSE_LOADER = 0;
 
+    /**
+     * Identifier for the course summary loader
+     */
+    private static final int SUMMARY_LOADER = 1;
+
+    /**
+     * Identifier for the course list loader used by the RecyclerView
+     */
+    private static final int COURSE_LIST_LOADER = 2;
+
+    /**
+     * Preference key of the way the catalog shows the courses, one of the MODE_ constants
+     */
+    private static final String PREF_CATALOG_MODE = "catalog_mode";
+
+    /**
+     * Catalog modes: all courses in a ListView, all courses in a RecyclerView with row-level
+     * updates, or a bounded window of courses in a RecyclerView that is loaded page by page
+     */
+    private static final int MODE_LIST = 0;
+    private static final int MODE_ANIMATED = 1;
+    private static final int MODE_PAGED = 2;
+
+    /**
+     * Loader argument with the text the courses are searched for
+     */
+    private static final String ARG_SEARCH_QUERY = "search_query";
+
+    /**
+     * Preference key of the column the courses are sorted by, or of an empty string for the order
+     * in which they were added
+     */
+    private static final String PREF_SORT_COLUMN = "catalog_sort_column";
+
+    /**
+     * Preference key of the flag that shows only the courses graded {@link #FILTER_MIN_GRADE} or
+     * higher
+     */
+    private static final String PREF_FILTER_GRADE = "catalog_filter_grade";
+
+    /**
+     * Lowest grade shown while the grade filter is on
+     */
+    private static final int FILTER_MIN_GRADE = 9;
+
     /**
      * Adapter for the ListView
      */
     private CourseCursorAdapter mCursorAdapter;
 
+    /**
+     * Adapter for the RecyclerView
+     */
+    private CourseRecyclerAdapter mRecyclerAdapter;
+
+    /**
+     * Way the catalog shows the courses, one of the MODE_ constants
+     */
+    private int mCatalogMode;
+
+    /**
+     * Loads the pages of courses in {@link #MODE_PAGED}
+     */
+    private CoursePager mPager;
+
+    /**
+     * RecyclerView showing the courses in {@link #MODE_ANIMATED} and {@link #MODE_PAGED}
+     */
+    private RecyclerView mCourseRecyclerView;
+
+    /**
+     * Column the courses are sorted by, or null for the order in which they were added
+     */
+    private String mSortColumn;
+
+    /**
+     * Whether only the courses graded {@link #FILTER_MIN_GRADE} or higher are shown
+     */
+    private boolean mFilterGrade;
+
+    /**
+     * Text the courses are searched for, or null to show all courses
+     */
+    private String mSearchQuery;
+
+    /**
+     * View shown while there are no courses
+     */
+    private View mEmptyView;
+
+    /**
+     * Callbacks for the course list loader, which applies only the rows that changed
+     */
+    private final LoaderManager.LoaderCallbacks<CourseListLoader.Result> mCourseListCallbacks =
+            new LoaderManager.LoaderCallbacks<CourseListLoader.Result>() {
+                @Override
+                public Loader<CourseListLoader.Result> onCreateLoader(int i, Bundle bundle) {
+                    // This loader reads the courses and works out what changed on a background thread
+                    // Changes are worked out against the list shown now, so a new search only
+                    // animates the courses that differ from the previous one
+                    return new CourseListLoader(CatalogActivity.this,
+                            getCoursesUri(bundle),
+                            getSelection(),
+                            getSelectionArgs(),
+                            getSortOrder(),
+                            mRecyclerAdapter.getList());
+                }
+
+                @Override
+                public void onLoadFinished(Loader<CourseListLoader.Result> loader,
+                                           CourseListLoader.Result result) {
+                    mRecyclerAdapter.submit(result);
+                    mEmptyView.setVisibility(result.list.size() == 0 ? View.VISIBLE : View.GONE);
+                }
+
+                @Override
+                public void onLoaderReset(Loader<CourseListLoader.Result> loader) {
+                    mRecyclerAdapter.clear();
+                }
+            };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -71,88 +192,173 @@ public class CatalogActivity extends AppCompatActivity implements
             public void onClick(View view) {
                 Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
                 startActivity(intent);
-                updateAverage();
             }
         });
 
-        updateAverage();
-        // Find the ListView which will be populated with the course data
-        ListView courseListView = findViewById(R.id.list);
-
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        courseListView.setEmptyView(emptyView);
-
-        // Setup an Adapter to create a list item for each row of course data in the Cursor.
-        // There is no course data yet (until the loader finishes) so pass in null for the Cursor.
-        mCursorAdapter = new CourseCursorAdapter(this);
-        courseListView.setAdapter(mCursorAdapter);
-
-        // Setup the item click listener
-        courseListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                // Create new intent to go to {@link EditorActivity}
-                Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        mCatalogMode = preferences.getInt(PREF_CATALOG_MODE, MODE_LIST);
+        mSortColumn = preferences.getString(PREF_SORT_COLUMN, "");
+        if (mSortColumn.isEmpty()) {
+            mSortColumn = null;
+        }
+        mFilterGrade = preferences.getBoolean(PREF_FILTER_GRADE, false);
 
-                // Form the content URI that represents the specific course that was clicked on,
-                // by appending the "id" (passed as input to this method) onto the
-                // {@link CoursesEntry#CONTENT_URI}.
-                // For miroslav, the URI would be "content://com.miroslav.android.courses/courses/2"
-                // if the course with ID 2 was clicked on.
-                Uri currentCourseUri = ContentUris.withAppendedId(CourseContract.CoursesEntry.CONTENT_URI, id);
+        // Find the ListView and RecyclerView, one of which will be populated with the course data
+        ListView courseListView = findViewById(R.id.list);
+        RecyclerView courseRecyclerView = findViewById(R.id.recycler);
+        mCourseRecyclerView = courseRecyclerView;
+        mEmptyView = findViewById(R.id.empty_view);
+
+        if (mCatalogMode != MODE_LIST) {
+            courseListView.setVisibility(View.GONE);
+            courseRecyclerView.setVisibility(View.VISIBLE);
+
+            // The adapter starts empty and receives row-level changes from the course list loader,
+            // or pages of courses from the pager
+            mRecyclerAdapter = new CourseRecyclerAdapter(this,
+                    new CourseRecyclerAdapter.OnCourseClickListener() {
+                        @Override
+                        public void onCourseClick(int position, long id) {
+                            // Hand the row the list already has to the editor
+                            CourseList courses = mRecyclerAdapter.getList();
+                            openEditor(id, courses.names[position], courses.credits[position],
+                                    courses.grades[position]);
+                        }
+                    });
+            courseRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+            courseRecyclerView.setAdapter(mRecyclerAdapter);
+
+            if (mCatalogMode == MODE_PAGED) {
+                startPager();
+            }
+        } else {
+            // Set empty view on the ListView, so that it only shows when the list has 0 items.
+            courseListView.setEmptyView(mEmptyView);
+
+            // Setup an Adapter to create a list item for each row of course data in the Cursor.
+            // There is no course data yet (until the loader finishes) so pass in null for the Cursor.
+            mCursorAdapter = new CourseCursorAdapter(this);
+            courseListView.setAdapter(mCursorAdapter);
+
+            // Setup the item click listener
+            courseListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+                @Override
+                public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+                    // Hand the row the list already has to the editor
+                    Cursor cursor = (Cursor) mCursorAdapter.getItem(position);
+                    int nameColumnIndex = cursor.getColumnIndex(
+                            CourseContract.CoursesEntry.COLUMN_COURSE_NAME);
+                    int creditColumnIndex = cursor.getColumnIndex(
+                            CourseContract.CoursesEntry.COLUMN_COURSE_CREDIT);
+                    int gradeColumnIndex = cursor.getColumnIndex(
+                            CourseContract.CoursesEntry.COLUMN_COURSE_GRADE);
+                    openEditor(id, cursor.getString(nameColumnIndex),
+                            cursor.getInt(creditColumnIndex), cursor.getInt(gradeColumnIndex));
+                }
+            });
+        }
 
-                // Set the URI on the data field of the intent
-                intent.setData(currentCourseUri);
-                updateAverage();
+        // Kick off the loaders
 
+        if (mCatalogMode == MODE_ANIMATED) {
+            getLoaderManager().initLoader(COURSE_LIST_LOADER, null, mCourseListCallbacks);
+        } else if (mCatalogMode == MODE_LIST) {
+            getLoaderManager().initLoader(COURSE_LOADER, null, this);
+        }
+        getLoaderManager().initLoader(SUMMARY_LOADER, null, this);
 
-                // Launch the {@link EditorActivity} to display the data for the current course.
-                startActivity(intent);
 
-            }
-        });
+    }
 
-        // Kick off the loader
+    /**
+     * Start loading pages of courses with the current sort order and filter, replacing the pager
+     * that was loading them before.
+     */
+    private void startPager() {
+        if (mPager != null) {
+            mPager.stop();
+            mCourseRecyclerView.removeOnScrollListener(mPager);
+        }
 
-        getLoaderManager().initLoader(COURSE_LOADER, null, this);
+        mPager = new CoursePager(this, mRecyclerAdapter, mSortColumn != null ? mSortColumn : _ID,
+                getSelection(), getSelectionArgs(),
+                new CoursePager.OnCoursesShownListener() {
+                    @Override
+                    public void onCoursesShown(int count) {
+                        mEmptyView.setVisibility(count == 0 ? View.VISIBLE : View.GONE);
+                    }
+                });
+        mCourseRecyclerView.addOnScrollListener(mPager);
+        mPager.start();
+    }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mPager != null) {
+            mPager.stop();
+        }
+    }
 
+    /**
+     * Open the {@link EditorActivity} for the course with the given ID, showing the given values
+     * right away while the editor reads the course again.
+     */
+    private void openEditor(long id, String name, int credit, int grade) {
+        // Create new intent to go to {@link EditorActivity}
+        Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
+
+        // Form the content URI that represents the specific course that was clicked on,
+        // by appending the "id" (passed as input to this method) onto the
+        // {@link CoursesEntry#CONTENT_URI}.
+        // For miroslav, the URI would be "content://com.miroslav.android.courses/courses/2"
+        // if the course with ID 2 was clicked on.
+        Uri currentCourseUri = ContentUris.withAppendedId(CourseContract.CoursesEntry.CONTENT_URI, id);
+
+        // Set the URI on the data field of the intent
+        intent.setData(currentCourseUri);
+        intent.putExtra(EditorActivity.EXTRA_COURSE_NAME, name);
+        intent.putExtra(EditorActivity.EXTRA_COURSE_CREDIT, credit);
+        intent.putExtra(EditorActivity.EXTRA_COURSE_GRADE, grade);
+
+        // Launch the {@link EditorActivity} to display the data for the current course.
+        startActivity(intent);
     }
 
-    private void updateAverage() {
+    /**
+     * Show the totals from the given summary cursor in the header above the list.
+     */
+    private void bindSummary(Cursor cursor) {
         TextView averageGrade = findViewById(R.id.grade);
         TextView sumCredits = findViewById(R.id.credit);
 
         TextView averageGradeLabel = findViewById(R.id.grade_label);
         TextView sumCreditsLabel = findViewById(R.id.credit_label);
 
-
-        CourseDbHelper db = new CourseDbHelper(this);
-        SQLiteDatabase sqLiteDatabase = db.getReadableDatabase();
-
-        String query = "SELECT AVG(" + CourseContract.CoursesEntry.COLUMN_COURSE_GRADE + "),"
-                + "SUM(" + CourseContract.CoursesEntry.COLUMN_COURSE_CREDIT + ")"
-                + "FROM " + CourseContract.CoursesEntry.TABLE_NAME + ";";
-
-
-        Cursor cursor = sqLiteDatabase.rawQuery(query, null);
-        cursor.moveToFirst();
-
-        if (cursor.getCount() > 0) {
-
-            String courseAverageGrade = cursor.getString(0);
-            String courseCreditsSum = cursor.getString(1);
-
-            averageGradeLabel.setText(courseAverageGrade);
-            sumCreditsLabel.setText(courseCreditsSum);
-
-            averageGrade.setText(R.string.average_quotation);
-            sumCredits.setText(R.string.sum_quotation);
+        if (cursor == null || !cursor.moveToFirst()) {
+            averageGradeLabel.setText(null);
+            sumCreditsLabel.setText(null);
+            return;
         }
 
+        int countColumnIndex = cursor.getColumnIndex(SummaryEntry.COLUMN_COURSE_COUNT);
+        int averageColumnIndex = cursor.getColumnIndex(SummaryEntry.COLUMN_WEIGHTED_AVERAGE_GRADE);
+        int creditSumColumnIndex = cursor.getColumnIndex(SummaryEntry.COLUMN_CREDIT_SUM);
+
+        // Leave the totals blank while there are no courses yet
+        if (cursor.getInt(countColumnIndex) > 0) {
+            averageGradeLabel.setText(getString(R.string.average_format,
+                    cursor.getDouble(averageColumnIndex)));
+            sumCreditsLabel.setText(getString(R.string.credit_progress,
+                    cursor.getInt(creditSumColumnIndex),
+                    getResources().getInteger(R.integer.degree_credits)));
+        } else {
+            averageGradeLabel.setText(null);
+            sumCreditsLabel.setText(null);
+        }
 
-        cursor.close();
+        averageGrade.setText(R.string.weighted_average_quotation);
+        sumCredits.setText(R.string.sum_quotation);
     }
 
     /**
@@ -161,7 +367,6 @@ public class CatalogActivity extends AppCompatActivity implements
     private void deleteAllCourses() {
         int rowsDeleted = getContentResolver().delete(CourseContract.CoursesEntry.CONTENT_URI, null, null);
         Log.v("CatalogActivity", rowsDeleted + " rows deleted from course database");
-        updateAverage();
     }
 
     @Override
@@ -170,11 +375,60 @@ public class CatalogActivity extends AppCompatActivity implements
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
 
+        // Search the courses as the user types
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                searchCourses(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                searchCourses(newText);
+                return true;
+            }
+        });
 
         // Return true to display menu
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+        int checkedItemId;
+        switch (mCatalogMode) {
+            case MODE_ANIMATED:
+                checkedItemId = R.id.action_recycler_mode;
+                break;
+            case MODE_PAGED:
+                checkedItemId = R.id.action_paged_mode;
+                break;
+            default:
+                checkedItemId = R.id.action_list_mode;
+        }
+        menu.findItem(checkedItemId).setChecked(true);
+
+        // Pages are ordered by a column, so search results are only shown in the full lists
+        menu.findItem(R.id.action_search).setVisible(mCatalogMode != MODE_PAGED);
+
+        int sortItemId;
+        if (mSortColumn == null) {
+            sortItemId = R.id.action_sort_added;
+        } else if (mSortColumn.equals(CourseContract.CoursesEntry.COLUMN_COURSE_NAME)) {
+            sortItemId = R.id.action_sort_name;
+        } else if (mSortColumn.equals(CourseContract.CoursesEntry.COLUMN_COURSE_CREDIT)) {
+            sortItemId = R.id.action_sort_credits;
+        } else {
+            sortItemId = R.id.action_sort_grade;
+        }
+        menu.findItem(sortItemId).setChecked(true);
+        menu.findItem(R.id.action_filter_grade).setChecked(mFilterGrade);
+        return true;
+    }
+
     private void showDeleteConfirmationDialog() {
         // Create an AlertDialog.Builder and set the message, and click listeners
         // for the postivie and negative buttons on the dialog.
@@ -220,14 +474,153 @@ public class CatalogActivity extends AppCompatActivity implements
             // Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
                 showDeleteConfirmationDialog();
-                updateAverage();
+                return true;
+
+            // Respond to a click on one of the list mode menu options by switching list modes
+            case R.id.action_list_mode:
+                setCatalogMode(MODE_LIST);
+                return true;
+            case R.id.action_recycler_mode:
+                setCatalogMode(MODE_ANIMATED);
+                return true;
+            case R.id.action_paged_mode:
+                setCatalogMode(MODE_PAGED);
+                return true;
+
+            // Respond to a click on one of the sort or filter menu options
+            case R.id.action_sort_added:
+                sortCourses(null);
+                return true;
+            case R.id.action_sort_name:
+                sortCourses(CourseContract.CoursesEntry.COLUMN_COURSE_NAME);
+                return true;
+            case R.id.action_sort_credits:
+                sortCourses(CourseContract.CoursesEntry.COLUMN_COURSE_CREDIT);
+                return true;
+            case R.id.action_sort_grade:
+                sortCourses(CourseContract.CoursesEntry.COLUMN_COURSE_GRADE);
+                return true;
+            case R.id.action_filter_grade:
+                filterCourses(!mFilterGrade);
                 return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Show only the courses matching the given search text, or all courses if it is empty.
+     */
+    private void searchCourses(String query) {
+        mSearchQuery = TextUtils.isEmpty(query) ? null : query;
+        reloadCourses();
+    }
+
+    /**
+     * Sort the courses by the given column, or by the order in which they were added if null.
+     */
+    private void sortCourses(String sortColumn) {
+        mSortColumn = sortColumn;
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(PREF_SORT_COLUMN, sortColumn != null ? sortColumn : "")
+                .apply();
+        invalidateOptionsMenu();
+        reloadCourses();
+    }
+
+    /**
+     * Show only the courses graded {@link #FILTER_MIN_GRADE} or higher (true) or all courses.
+     */
+    private void filterCourses(boolean filterGrade) {
+        mFilterGrade = filterGrade;
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putBoolean(PREF_FILTER_GRADE, filterGrade)
+                .apply();
+        invalidateOptionsMenu();
+        reloadCourses();
+    }
+
+    /**
+     * Load the courses again with the current search text, sort order and filter.
+     */
+    private void reloadCourses() {
+        Bundle args = new Bundle();
+        if (mSearchQuery != null) {
+            args.putString(ARG_SEARCH_QUERY, mSearchQuery);
+        }
+
+        if (mCatalogMode == MODE_ANIMATED) {
+            getLoaderManager().restartLoader(COURSE_LIST_LOADER, args, mCourseListCallbacks);
+        } else if (mCatalogMode == MODE_LIST) {
+            getLoaderManager().restartLoader(COURSE_LOADER, args, this);
+        } else {
+            startPager();
+        }
+    }
+
+    /**
+     * Return the selection clause for the current filter, or null to select all courses.
+     * The filter compares against an indexed column, so it is answered from the index.
+     */
+    private String getSelection() {
+        return mFilterGrade ? CourseContract.CoursesEntry.COLUMN_COURSE_GRADE + " >= ?" : null;
+    }
+
+    /**
+     * Return the arguments of {@link #getSelection()}.
+     */
+    private String[] getSelectionArgs() {
+        return mFilterGrade ? new String[]{String.valueOf(FILTER_MIN_GRADE)} : null;
+    }
+
+    /**
+     * Return the sort order for the current sort column, or null for the default order.
+     * The ID breaks ties, which the column index provides for free.
+     */
+    private String getSortOrder() {
+        return mSortColumn != null ? mSortColumn + ", " + _ID : null;
+    }
+
+    /**
+     * Return the URI of the courses to show for the given loader arguments: the search results if
+     * they hold a search text, all courses otherwise.
+     */
+    private static Uri getCoursesUri(Bundle args) {
+        String query = args != null ? args.getString(ARG_SEARCH_QUERY) : null;
+        if (query == null) {
+            return CourseContract.CoursesEntry.CONTENT_URI;
+        }
+        return CourseContract.CoursesEntry.buildSearchUri(query);
+    }
+
+    /**
+     * Remember the given catalog mode and recreate the activity to show the courses in it.
+     */
+    private void setCatalogMode(int mode) {
+        if (mode == mCatalogMode) {
+            return;
+        }
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putInt(PREF_CATALOG_MODE, mode)
+                .apply();
+        recreate();
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+        if (i == SUMMARY_LOADER) {
+            // This loader reads the running totals through the provider on a background thread,
+            // and is reloaded whenever the courses change
+            return new CursorLoader(this,
+                    SummaryEntry.CONTENT_URI,
+                    new String[]{
+                            SummaryEntry.COLUMN_COURSE_COUNT,
+                            SummaryEntry.COLUMN_WEIGHTED_AVERAGE_GRADE,
+                            SummaryEntry.COLUMN_CREDIT_SUM},
+                    null,
+                    null,
+                    null);
+        }
+
         // Define a projection that specifies the columns from the table we care about.
         String[] projection = {
                 _ID,
@@ -237,24 +630,32 @@ public class CatalogActivity extends AppCompatActivity implements
 
         // This loader will execute the ContentProvider's query method on a background thread
         return new CursorLoader(this,   // Parent activity context
-                CourseContract.CoursesEntry.CONTENT_URI,   // Provider content URI to query
+                getCoursesUri(bundle),  // Provider content URI to query
                 projection,             // Columns to include in the resulting Cursor
-                null,                   // No selection clause
-                null,                   // No selection arguments
-                null);                  // Default sort order
+                getSelection(),         // Selection clause of the current filter
+                getSelectionArgs(),     // Selection arguments of the current filter
+                getSortOrder());        // Sort order chosen by the user
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        if (loader.getId() == SUMMARY_LOADER) {
+            bindSummary(data);
+            return;
+        }
+
         // Update {@link CourseCursorAdapter} with this new cursor containing updated course data
         mCursorAdapter.swapCursor(data);
-        updateAverage();
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == SUMMARY_LOADER) {
+            bindSummary(null);
+            return;
+        }
+
         // Callback called when the data needs to be deleted
         mCursorAdapter.swapCursor(null);
-        updateAverage();
     }
 }
@@ -16,6 +16,7 @@
 package com.miroslav.android.courses;
 
 import android.content.Context;
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -31,6 +32,19 @@ import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
  * how to create list items for each row of course data in the {@link Cursor}.
  */
 class CourseCursorAdapter extends CursorAdapter {
+
+    /**
+     * Cached credit and grade labels
+     */
+    private final CourseLabels mLabels;
+
+    /**
+     * Column indices of the current cursor, resolved once per swapCursor
+     */
+    private int mNameColumnIndex;
+    private int mCreditColumnIndex;
+    private int mGradeColumnIndex;
+
     /**
      * Constructs a new {@link CourseCursorAdapter}.
      *
@@ -38,6 +52,18 @@ class CourseCursorAdapter extends CursorAdapter {
      */
     public CourseCursorAdapter(Context context) {
         super(context, null, 0 /* flags */);
+        mLabels = new CourseLabels(context);
+    }
+
+    @Override
+    public Cursor swapCursor(Cursor newCursor) {
+        // Find the columns of course attributes that we're interested in
+        if (newCursor != null) {
+            mNameColumnIndex = newCursor.getColumnIndex(CoursesEntry.COLUMN_COURSE_NAME);
+            mCreditColumnIndex = newCursor.getColumnIndex(CoursesEntry.COLUMN_COURSE_CREDIT);
+            mGradeColumnIndex = newCursor.getColumnIndex(CoursesEntry.COLUMN_COURSE_GRADE);
+        }
+        return super.swapCursor(newCursor);
     }
 
     /**
@@ -52,7 +78,12 @@ class CourseCursorAdapter extends CursorAdapter {
     @Override
     public View newView(Context context, Cursor cursor, ViewGroup parent) {
         // Inflate a list item view using the layout specified in list_item.xml
-        return LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+        View view = LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+
+        // Find individual views that we want to modify in the list item layout once,
+        // and keep them with the view for every later bind
+        view.setTag(new ViewHolder(view));
+        return view;
     }
 
     /**
@@ -67,29 +98,35 @@ class CourseCursorAdapter extends CursorAdapter {
      */
     @Override
     public void bindView(View view, Context context, Cursor cursor) {
-        // Find individual views that we want to modify in the list item layout
-        TextView nameTextView = view.findViewById(R.id.name);
-        TextView creditTextView = view.findViewById(R.id.credit);
-        TextView gradeTextView = view.findViewById(R.id.grade);
+        ViewHolder holder = (ViewHolder) view.getTag();
 
+        // Copy the name into the buffer owned by this row instead of creating a new String
+        cursor.copyStringToBuffer(mNameColumnIndex, holder.nameBuffer);
+        holder.nameTextView.setText(holder.nameBuffer.data, 0, holder.nameBuffer.sizeCopied);
 
-        // Find the columns of course attributes that we're interested in
-        int nameColumnIndex = cursor.getColumnIndex(CoursesEntry.COLUMN_COURSE_NAME);
-        int creditColumnIndex = cursor.getColumnIndex(CoursesEntry.COLUMN_COURSE_CREDIT);
-        int gradeColumnIndex = cursor.getColumnIndex(CoursesEntry.COLUMN_COURSE_GRADE);
+        // Update the TextViews with the attributes for the current course
+        holder.creditTextView.setText(mLabels.getCreditText(cursor.getInt(mCreditColumnIndex)));
+        holder.gradeTextView.setText(mLabels.getGradeText(cursor.getInt(mGradeColumnIndex)));
+    }
 
-        // Read the course attributes from the Cursor for the current course
-        String courseName = cursor.getString(nameColumnIndex);
-        String courseCredit = cursor.getString(creditColumnIndex) + " " + context.getString(R.string.credits);
-        String courseGrade = cursor.getString(gradeColumnIndex);
+    /**
+     * Views of a single list item, looked up once when the item is created.
+     */
+    private static class ViewHolder {
 
+        final TextView nameTextView;
+        final TextView creditTextView;
+        final TextView gradeTextView;
 
-        // Update the TextViews with the attributes for the current course
-        nameTextView.setText(courseName);
-        creditTextView.setText(courseCredit);
-        gradeTextView.setText(courseGrade);
+        /**
+         * Buffer the course name is copied into, reused every time the item is bound
+         */
+        final CharArrayBuffer nameBuffer = new CharArrayBuffer(64);
 
+        ViewHolder(View view) {
+            nameTextView = view.findViewById(R.id.name);
+            creditTextView = view.findViewById(R.id.credit);
+            gradeTextView = view.findViewById(R.id.grade);
+        }
     }
-
-
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses;
+
+import android.content.Context;
+
+/**
+ * {@link CourseLabels} formats the credit and grade values shown in the course lists. Each label
+ * is built the first time its value is shown and reused afterwards, so binding a row does not
+ * allocate new strings.
+ */
+class CourseLabels {
+
+    /**
+     * Highest credit and grade values a course can have, used to size the label caches
+     */
+    private static final int MAX_CREDIT = 15;
+    private static final int MAX_GRADE = 10;
+
+    /**
+     * Localized label shown after the number of credits
+     */
+    private final String mCreditsLabel;
+
+    /**
+     * Credit and grade labels, indexed by value
+     */
+    private final String[] mCreditTexts = new String[MAX_CREDIT + 1];
+    private final String[] mGradeTexts = new String[MAX_GRADE + 1];
+
+    /**
+     * Constructs a new {@link CourseLabels}.
+     *
+     * @param context The context
+     */
+    CourseLabels(Context context) {
+        mCreditsLabel = context.getString(R.string.credits);
+    }
+
+    /**
+     * Return the label for the given number of credits, e.g. "6 Credits".
+     */
+    String getCreditText(int credit) {
+        if (credit < 0 || credit > MAX_CREDIT) {
+            return credit + " " + mCreditsLabel;
+        }
+        if (mCreditTexts[credit] == null) {
+            mCreditTexts[credit] = credit + " " + mCreditsLabel;
+        }
+        return mCreditTexts[credit];
+    }
+
+    /**
+     * Return the label for the given grade.
+     */
+    String getGradeText(int grade) {
+        if (grade < 0 || grade > MAX_GRADE) {
+            return String.valueOf(grade);
+        }
+        if (mGradeTexts[grade] == null) {
+            mGradeTexts[grade] = String.valueOf(grade);
+        }
+        return mGradeTexts[grade];
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses;
+
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+
+/**
+ * {@link CourseList} is an immutable in-memory copy of course rows, stored column by column.
+ * Two lists can be compared row by row, keyed by course ID, to find out what changed between them.
+ */
+final class CourseList {
+
+    /**
+     * List without any courses
+     */
+    static final CourseList EMPTY = new CourseList(new long[0], new String[0], new int[0], new int[0]);
+
+    /**
+     * Columns a {@link CourseList} is read from
+     */
+    static final String[] PROJECTION = {
+            CoursesEntry._ID,
+            CoursesEntry.COLUMN_COURSE_NAME,
+            CoursesEntry.COLUMN_COURSE_CREDIT,
+            CoursesEntry.COLUMN_COURSE_GRADE};
+
+    final long[] ids;
+    final String[] names;
+    final int[] credits;
+    final int[] grades;
+
+    private CourseList(long[] ids, String[] names, int[] credits, int[] grades) {
+        this.ids = ids;
+        this.names = names;
+        this.credits = credits;
+        this.grades = grades;
+    }
+
+    /**
+     * Return the number of courses in the list.
+     */
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * Return the value of the given sort column for the course at the given position, as used by
+     * the paging parameters of {@link CoursesEntry#CONTENT_URI}.
+     */
+    String getSortKey(int position, String sortColumn) {
+        switch (sortColumn) {
+            case CoursesEntry.COLUMN_COURSE_NAME:
+                return names[position];
+            case CoursesEntry.COLUMN_COURSE_CREDIT:
+                return String.valueOf(credits[position]);
+            case CoursesEntry.COLUMN_COURSE_GRADE:
+                return String.valueOf(grades[position]);
+            default:
+                return String.valueOf(ids[position]);
+        }
+    }
+
+    /**
+     * Return the position of the course with the given ID, or -1 if it is not in the list.
+     */
+    int indexOf(long id) {
+        for (int position = 0; position < ids.length; position++) {
+            if (ids[position] == id) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return a new list with the course at the given position replaced by the first course of the
+     * other list.
+     */
+    CourseList set(int position, CourseList other) {
+        long[] ids = this.ids.clone();
+        String[] names = this.names.clone();
+        int[] credits = this.credits.clone();
+        int[] grades = this.grades.clone();
+
+        ids[position] = other.ids[0];
+        names[position] = other.names[0];
+        credits[position] = other.credits[0];
+        grades[position] = other.grades[0];
+        return new CourseList(ids, names, credits, grades);
+    }
+
+    /**
+     * Return a new list with the courses from position {@code from} (inclusive) to {@code to}
+     * (exclusive) of this list, followed by the courses from {@code otherFrom} to {@code otherTo}
+     * of the other list.
+     */
+    CourseList join(int from, int to, CourseList other, int otherFrom, int otherTo) {
+        int count = to - from;
+        int otherCount = otherTo - otherFrom;
+        int size = count + otherCount;
+        long[] ids = new long[size];
+        String[] names = new String[size];
+        int[] credits = new int[size];
+        int[] grades = new int[size];
+
+        System.arraycopy(this.ids, from, ids, 0, count);
+        System.arraycopy(this.names, from, names, 0, count);
+        System.arraycopy(this.credits, from, credits, 0, count);
+        System.arraycopy(this.grades, from, grades, 0, count);
+
+        System.arraycopy(other.ids, otherFrom, ids, count, otherCount);
+        System.arraycopy(other.names, otherFrom, names, count, otherCount);
+        System.arraycopy(other.credits, otherFrom, credits, count, otherCount);
+        System.arraycopy(other.grades, otherFrom, grades, count, otherCount);
+        return new CourseList(ids, names, credits, grades);
+    }
+
+    /**
+     * Return a new list with the courses of this list in reverse order.
+     */
+    CourseList reverse() {
+        int size = size();
+        long[] ids = new long[size];
+        String[] names = new String[size];
+        int[] credits = new int[size];
+        int[] grades = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = this.ids[size - 1 - i];
+            names[i] = this.names[size - 1 - i];
+            credits[i] = this.credits[size - 1 - i];
+            grades[i] = this.grades[size - 1 - i];
+        }
+        return new CourseList(ids, names, credits, grades);
+    }
+
+    /**
+     * Copy all rows of the given cursor, which must contain the {@link #PROJECTION} columns.
+     */
+    static CourseList fromCursor(Cursor cursor) {
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        String[] names = new String[count];
+        int[] credits = new int[count];
+        int[] grades = new int[count];
+
+        int idColumnIndex = cursor.getColumnIndex(CoursesEntry._ID);
+        int nameColumnIndex = cursor.getColumnIndex(CoursesEntry.COLUMN_COURSE_NAME);
+        int creditColumnIndex = cursor.getColumnIndex(CoursesEntry.COLUMN_COURSE_CREDIT);
+        int gradeColumnIndex = cursor.getColumnIndex(CoursesEntry.COLUMN_COURSE_GRADE);
+
+        int position = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext() && position < count) {
+            ids[position] = cursor.getLong(idColumnIndex);
+            names[position] = cursor.getString(nameColumnIndex);
+            credits[position] = cursor.getInt(creditColumnIndex);
+            grades[position] = cursor.getInt(gradeColumnIndex);
+            position++;
+        }
+        return new CourseList(ids, names, credits, grades);
+    }
+
+    /**
+     * Work out the inserted, changed and removed rows between two lists. This walks both lists,
+     * so it should be called on a background thread.
+     */
+    static DiffUtil.DiffResult diff(final CourseList oldList, final CourseList newList) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldList.ids[oldItemPosition] == newList.ids[newItemPosition];
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldList.credits[oldItemPosition] == newList.credits[newItemPosition]
+                        && oldList.grades[oldItemPosition] == newList.grades[newItemPosition]
+                        && oldList.names[oldItemPosition].equals(newList.names[newItemPosition]);
+            }
+        }, false);
+    }
+}
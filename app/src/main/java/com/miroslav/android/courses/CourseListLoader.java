@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v7.util.DiffUtil;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+
+/**
+ * {@link CourseListLoader} loads courses into a {@link CourseList} on a background thread and
+ * works out, on the same thread, how the new list differs from the one delivered before it.
+ * The loader reloads whenever any course changes, not only those under its URI: a search URI
+ * never receives the notifications of the single courses it lists.
+ */
+class CourseListLoader extends AsyncTaskLoader<CourseListLoader.Result> {
+
+    /**
+     * Outcome of a load: the new list, and the changes that turn the list it was compared
+     * against into the new one.
+     */
+    static class Result {
+
+        /**
+         * List the changes were worked out against
+         */
+        final CourseList base;
+
+        /**
+         * Newly loaded list
+         */
+        final CourseList list;
+
+        /**
+         * Changes from {@link #base} to {@link #list}
+         */
+        final DiffUtil.DiffResult diff;
+
+        Result(CourseList base, CourseList list, DiffUtil.DiffResult diff) {
+            this.base = base;
+            this.list = list;
+            this.diff = diff;
+        }
+    }
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+
+    private final Uri mUri;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+    private final String mSortOrder;
+
+    /**
+     * List the first load is compared against
+     */
+    private final CourseList mInitialBase;
+
+    /**
+     * Last result handed to the client, kept to compare the next load against
+     */
+    private volatile Result mResult;
+
+    private boolean mObserverRegistered;
+
+    /**
+     * Query of the load in progress, or null. Guarded by this loader.
+     */
+    private CancellableQuery mQuery;
+
+    /**
+     * Constructs a new {@link CourseListLoader}.
+     *
+     * @param context       of the app
+     * @param uri           content URI of the courses to load
+     * @param selection     selection clause, or null for all courses
+     * @param selectionArgs arguments of the selection clause
+     * @param sortOrder     sort order, or null for the default order
+     * @param initialBase   list the client shows before the first load, which the first load is
+     *                      compared against
+     */
+    CourseListLoader(Context context, Uri uri, String selection, String[] selectionArgs,
+                     String sortOrder, CourseList initialBase) {
+        super(context);
+        mInitialBase = initialBase;
+        mUri = uri;
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mSortOrder = sortOrder;
+    }
+
+    @Override
+    public Result loadInBackground() {
+        CancellableQuery query = new CancellableQuery();
+        synchronized (this) {
+            mQuery = query;
+        }
+
+        CourseList list;
+        try {
+            Cursor cursor = query.query(getContext().getContentResolver(), mUri,
+                    CourseList.PROJECTION, mSelection, mSelectionArgs, mSortOrder);
+            if (cursor == null) {
+                list = CourseList.EMPTY;
+            } else {
+                try {
+                    list = CourseList.fromCursor(cursor);
+                } finally {
+                    cursor.close();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                mQuery = null;
+            }
+        }
+
+        Result previous = mResult;
+        CourseList base = previous != null ? previous.list : mInitialBase;
+        return new Result(base, list, CourseList.diff(base, list));
+    }
+
+    /**
+     * Stop the query of a load that is no longer wanted, e.g. after the loader was restarted with
+     * a newer search. Only called on API 16 and up.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        synchronized (this) {
+            if (mQuery != null) {
+                mQuery.cancel();
+            }
+        }
+    }
+
+    @Override
+    public void deliverResult(Result result) {
+        if (isReset()) {
+            return;
+        }
+
+        mResult = result;
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(CoursesEntry.CONTENT_URI, true,
+                    mObserver);
+            mObserverRegistered = true;
+        }
+
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+        if (takeContentChanged() || mResult == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+
+        mResult = null;
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+    }
+}
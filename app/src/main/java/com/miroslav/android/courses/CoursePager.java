@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+
+import com.miroslav.android.courses.data.CourseContract;
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * {@link CoursePager} feeds a {@link CourseRecyclerAdapter} one page of courses at a time as the
+ * user scrolls. At most {@link #MAX_PAGES} pages are kept; the page furthest from the scroll
+ * direction is dropped when a new one arrives and loaded again when the user scrolls back, so the
+ * memory used stays the same no matter how many courses there are.
+ */
+class CoursePager extends RecyclerView.OnScrollListener {
+
+    /**
+     * Callback invoked after the courses shown by the adapter have changed.
+     */
+    interface OnCoursesShownListener {
+        void onCoursesShown(int count);
+    }
+
+    /**
+     * Number of courses loaded per page
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Number of pages kept in the adapter at once
+     */
+    private static final int MAX_PAGES = 5;
+
+    /**
+     * Distance in rows from either end of the loaded courses at which the next page is loaded
+     */
+    private static final int PREFETCH_DISTANCE = 25;
+
+    /**
+     * Kinds of page loads
+     */
+    private static final int LOAD_FIRST = 0;
+    private static final int LOAD_AFTER = 1;
+    private static final int LOAD_BEFORE = 2;
+    private static final int LOAD_RELOAD = 3;
+    private static final int LOAD_ROW = 4;
+
+    private final ContentResolver mContentResolver;
+    private final CourseRecyclerAdapter mAdapter;
+    private final OnCoursesShownListener mListener;
+
+    /**
+     * Column the courses are ordered by
+     */
+    private final String mSortColumn;
+
+    /**
+     * Selection clause and arguments filtering the courses, or null for all courses
+     */
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+
+    /**
+     * Sizes of the pages currently in the adapter, in order
+     */
+    private final ArrayDeque<Integer> mPageSizes = new ArrayDeque<>();
+
+    /**
+     * Whether there may be courses after the last or before the first loaded course
+     */
+    private boolean mHasMoreAfter;
+    private boolean mHasMoreBefore;
+
+    /**
+     * Page load in progress, or null
+     */
+    private PageTask mTask;
+
+    /**
+     * Reloads the loaded courses whenever the courses change. A change of a single shown course
+     * only reloads that course.
+     */
+    private final ContentObserver mObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Before API 16 the changed URI is not passed in
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            long id = uri != null ? getCourseId(uri) : -1;
+            if (id != -1 && mTask == null && mAdapter.getList().indexOf(id) != -1) {
+                loadRow(id);
+            } else {
+                load(mAdapter.getItemCount() == 0 ? LOAD_FIRST : LOAD_RELOAD);
+            }
+        }
+    };
+
+    /**
+     * Constructs a new {@link CoursePager}.
+     *
+     * @param context       The context
+     * @param adapter       Adapter the pages are shown in
+     * @param sortColumn    Column the courses are ordered by
+     * @param selection     Selection clause filtering the courses, or null for all courses
+     * @param selectionArgs Arguments of the selection clause
+     * @param listener      Listener notified when the shown courses change
+     */
+    CoursePager(Context context, CourseRecyclerAdapter adapter, String sortColumn,
+                String selection, String[] selectionArgs, OnCoursesShownListener listener) {
+        mContentResolver = context.getContentResolver();
+        mAdapter = adapter;
+        mSortColumn = sortColumn;
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mListener = listener;
+    }
+
+    /**
+     * Load the first page and start watching the courses for changes.
+     */
+    void start() {
+        mContentResolver.registerContentObserver(CoursesEntry.CONTENT_URI, true, mObserver);
+        load(LOAD_FIRST);
+    }
+
+    /**
+     * Stop loading pages and watching the courses.
+     */
+    void stop() {
+        mContentResolver.unregisterContentObserver(mObserver);
+        if (mTask != null) {
+            mTask.abort();
+            mTask = null;
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (mTask != null) {
+            return;
+        }
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (dy > 0 && mHasMoreAfter && layoutManager.findLastVisibleItemPosition()
+                >= mAdapter.getItemCount() - PREFETCH_DISTANCE) {
+            load(LOAD_AFTER);
+        } else if (dy < 0 && mHasMoreBefore
+                && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+            load(LOAD_BEFORE);
+        }
+    }
+
+    /**
+     * Start loading the page of the given kind, replacing any load in progress.
+     */
+    private void load(int kind) {
+        if (mTask != null) {
+            mTask.abort();
+        }
+
+        CourseList shown = mAdapter.getList();
+        Uri.Builder builder = CoursesEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(CoursesEntry.QUERY_PARAMETER_SORT, mSortColumn);
+        int limit = PAGE_SIZE;
+
+        switch (kind) {
+            case LOAD_AFTER: {
+                int last = shown.size() - 1;
+                builder.appendQueryParameter(CoursesEntry.QUERY_PARAMETER_AFTER,
+                        shown.getSortKey(last, mSortColumn));
+                builder.appendQueryParameter(CoursesEntry.QUERY_PARAMETER_AFTER_ID,
+                        String.valueOf(shown.ids[last]));
+                break;
+            }
+            case LOAD_BEFORE:
+                builder.appendQueryParameter(CoursesEntry.QUERY_PARAMETER_BEFORE,
+                        shown.getSortKey(0, mSortColumn));
+                builder.appendQueryParameter(CoursesEntry.QUERY_PARAMETER_BEFORE_ID,
+                        String.valueOf(shown.ids[0]));
+                break;
+            case LOAD_RELOAD:
+                // Read the shown window again, starting at (and including) its first course
+                builder.appendQueryParameter(CoursesEntry.QUERY_PARAMETER_AFTER,
+                        shown.getSortKey(0, mSortColumn));
+                builder.appendQueryParameter(CoursesEntry.QUERY_PARAMETER_AFTER_ID,
+                        String.valueOf(shown.ids[0] - 1));
+                limit = Math.max(shown.size(), PAGE_SIZE);
+                break;
+        }
+        builder.appendQueryParameter(CoursesEntry.QUERY_PARAMETER_LIMIT, String.valueOf(limit));
+
+        mTask = new PageTask(kind, builder.build(), limit, mSelection, mSelectionArgs);
+        mTask.execute();
+    }
+
+    /**
+     * Start loading the shown course with the given ID again, if it still passes the filter.
+     */
+    private void loadRow(long id) {
+        String selection = CoursesEntry._ID + "=?";
+        String[] selectionArgs = {String.valueOf(id)};
+        if (mSelection != null) {
+            selection += " AND (" + mSelection + ")";
+            selectionArgs = new String[1 + (mSelectionArgs != null ? mSelectionArgs.length : 0)];
+            selectionArgs[0] = String.valueOf(id);
+            if (mSelectionArgs != null) {
+                System.arraycopy(mSelectionArgs, 0, selectionArgs, 1, mSelectionArgs.length);
+            }
+        }
+
+        mTask = new PageTask(LOAD_ROW, CoursesEntry.CONTENT_URI, 1, selection, selectionArgs);
+        mTask.execute();
+    }
+
+    /**
+     * Return the ID of the course the given URI points to, or -1 if it is not a course URI.
+     */
+    private static long getCourseId(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() == 2 && CourseContract.PATH_COURSES.equals(segments.get(0))
+                && TextUtils.isDigitsOnly(segments.get(1))) {
+            return Long.parseLong(segments.get(1));
+        }
+        return -1;
+    }
+
+    /**
+     * Show a loaded page in the adapter.
+     */
+    private void onPageLoaded(int kind, CourseList page, int limit) {
+        switch (kind) {
+            case LOAD_ROW: {
+                // The course can stay where it is if it is still shown and kept its sort value,
+                // otherwise it was filtered out or moved, and the window is read again
+                int position = page.size() == 0 ? -1 : mAdapter.getList().indexOf(page.ids[0]);
+                if (position != -1 && page.getSortKey(0, mSortColumn)
+                        .equals(mAdapter.getList().getSortKey(position, mSortColumn))) {
+                    mAdapter.update(position, page);
+                } else {
+                    load(mAdapter.getItemCount() == 0 ? LOAD_FIRST : LOAD_RELOAD);
+                }
+                return;
+            }
+            case LOAD_FIRST:
+            case LOAD_RELOAD:
+                if (kind == LOAD_RELOAD && page.size() == 0) {
+                    // Everything from the shown window onwards is gone, so start over
+                    load(LOAD_FIRST);
+                    return;
+                }
+                if (kind == LOAD_FIRST) {
+                    mHasMoreBefore = false;
+                }
+                mAdapter.replace(page);
+                mPageSizes.clear();
+                for (int start = 0; start < page.size(); start += PAGE_SIZE) {
+                    mPageSizes.addLast(Math.min(PAGE_SIZE, page.size() - start));
+                }
+                mHasMoreAfter = page.size() == limit;
+                break;
+            case LOAD_AFTER: {
+                mHasMoreAfter = page.size() == limit;
+                if (page.size() == 0) {
+                    return;
+                }
+                int drop = 0;
+                if (mPageSizes.size() >= MAX_PAGES) {
+                    drop = mPageSizes.removeFirst();
+                    mHasMoreBefore = true;
+                }
+                mAdapter.append(page, drop);
+                mPageSizes.addLast(page.size());
+                break;
+            }
+            case LOAD_BEFORE: {
+                mHasMoreBefore = page.size() == limit;
+                if (page.size() == 0) {
+                    return;
+                }
+                int drop = 0;
+                if (mPageSizes.size() >= MAX_PAGES) {
+                    drop = mPageSizes.removeLast();
+                    mHasMoreAfter = true;
+                }
+                mAdapter.prepend(page, drop);
+                mPageSizes.addFirst(page.size());
+                break;
+            }
+        }
+        mListener.onCoursesShown(mAdapter.getItemCount());
+    }
+
+    /**
+     * Loads one page of courses on a background thread.
+     */
+    private class PageTask extends AsyncTask<Void, Void, CourseList> {
+
+        private final int mKind;
+        private final Uri mUri;
+        private final int mLimit;
+        private final String mTaskSelection;
+        private final String[] mTaskSelectionArgs;
+        private final CancellableQuery mQuery = new CancellableQuery();
+
+        PageTask(int kind, Uri uri, int limit, String selection, String[] selectionArgs) {
+            mKind = kind;
+            mUri = uri;
+            mLimit = limit;
+            mTaskSelection = selection;
+            mTaskSelectionArgs = selectionArgs;
+        }
+
+        /**
+         * Cancel the task, stopping its query in the provider if it is running.
+         */
+        void abort() {
+            cancel(false);
+            mQuery.cancel();
+        }
+
+        @Override
+        protected CourseList doInBackground(Void... params) {
+            Cursor cursor;
+            try {
+                cursor = mQuery.query(mContentResolver, mUri, CourseList.PROJECTION,
+                        mTaskSelection, mTaskSelectionArgs, null);
+            } catch (RuntimeException e) {
+                // A cancelled query throws, and its result would be dropped anyway
+                if (mQuery.isCanceled()) {
+                    return CourseList.EMPTY;
+                }
+                throw e;
+            }
+            if (cursor == null) {
+                return CourseList.EMPTY;
+            }
+
+            try {
+                CourseList page = CourseList.fromCursor(cursor);
+                // Pages before the loaded courses arrive nearest first
+                return mKind == LOAD_BEFORE ? page.reverse() : page;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(CourseList page) {
+            if (mTask != this) {
+                return;
+            }
+            mTask = null;
+            onPageLoaded(mKind, page, mLimit);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+/**
+ * {@link CourseRecyclerAdapter} is an adapter for a {@link RecyclerView} that shows the courses
+ * of a {@link CourseList}. New lists are applied as row-level changes, so only the inserted,
+ * changed and removed rows are animated and rebound.
+ */
+class CourseRecyclerAdapter extends RecyclerView.Adapter<CourseRecyclerAdapter.ViewHolder> {
+
+    /**
+     * Callback invoked when a course in the list is clicked.
+     */
+    interface OnCourseClickListener {
+        void onCourseClick(int position, long id);
+    }
+
+    private final LayoutInflater mInflater;
+    private final CourseLabels mLabels;
+    private final OnCourseClickListener mListener;
+
+    /**
+     * Courses currently shown
+     */
+    private CourseList mList = CourseList.EMPTY;
+
+    /**
+     * Constructs a new {@link CourseRecyclerAdapter}.
+     *
+     * @param context  The context
+     * @param listener Listener notified when a course is clicked
+     */
+    CourseRecyclerAdapter(Context context, OnCourseClickListener listener) {
+        mInflater = LayoutInflater.from(context);
+        mLabels = new CourseLabels(context);
+        mListener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Show the list of the given load result. When the result was worked out against the list
+     * shown now, only the changed rows are updated; otherwise everything is rebound.
+     */
+    void submit(CourseListLoader.Result result) {
+        CourseList previous = mList;
+        mList = result.list;
+        if (result.base == previous) {
+            result.diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Show the given list in place of the current one, rebinding every row.
+     */
+    void replace(CourseList list) {
+        mList = list;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Add the given courses after the current ones, dropping the given number of courses from the
+     * start of the list.
+     */
+    void append(CourseList courses, int dropFromStart) {
+        int oldSize = mList.size();
+        mList = mList.join(dropFromStart, oldSize, courses, 0, courses.size());
+        if (dropFromStart > 0) {
+            notifyItemRangeRemoved(0, dropFromStart);
+        }
+        notifyItemRangeInserted(oldSize - dropFromStart, courses.size());
+    }
+
+    /**
+     * Add the given courses before the current ones, dropping the given number of courses from the
+     * end of the list.
+     */
+    void prepend(CourseList courses, int dropFromEnd) {
+        int oldSize = mList.size();
+        mList = courses.join(0, courses.size(), mList, 0, oldSize - dropFromEnd);
+        if (dropFromEnd > 0) {
+            notifyItemRangeRemoved(oldSize - dropFromEnd, dropFromEnd);
+        }
+        notifyItemRangeInserted(0, courses.size());
+    }
+
+    /**
+     * Show the first course of the given list in place of the course at the given position,
+     * rebinding only that row.
+     */
+    void update(int position, CourseList course) {
+        mList = mList.set(position, course);
+        notifyItemChanged(position);
+    }
+
+    /**
+     * Return the courses currently shown.
+     */
+    CourseList getList() {
+        return mList;
+    }
+
+    /**
+     * Remove all courses from the list.
+     */
+    void clear() {
+        mList = CourseList.EMPTY;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        // Inflate a list item view using the layout specified in list_item.xml
+        return new ViewHolder(mInflater.inflate(R.layout.list_item, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        holder.nameTextView.setText(mList.names[position]);
+        holder.creditTextView.setText(mLabels.getCreditText(mList.credits[position]));
+        holder.gradeTextView.setText(mLabels.getGradeText(mList.grades[position]));
+    }
+
+    @Override
+    public int getItemCount() {
+        return mList.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mList.ids[position];
+    }
+
+    /**
+     * Views of a single list item, looked up once when the item is created.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final TextView nameTextView;
+        final TextView creditTextView;
+        final TextView gradeTextView;
+
+        ViewHolder(View view) {
+            super(view);
+            nameTextView = view.findViewById(R.id.name);
+            creditTextView = view.findViewById(R.id.credit);
+            gradeTextView = view.findViewById(R.id.grade);
+            view.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mListener.onCourseClick(position, getItemId());
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link CourseWriter} applies course writes on a background thread, so screens do not wait for
+ * the database on the main thread.
+ * <p>
+ * Writes are applied one at a time in the order they were made, each as it was requested. Every
+ * write is identified by the request returned when it is made, and its result is reported on the
+ * main thread to the callback attached to that request once the provider has committed it. A
+ * screen that is recreated detaches its callback and attaches the new one to the same request; a
+ * result that arrives in between is kept until then.
+ * <p>
+ * Writes waiting in the queue are only held in memory and are lost if the process dies, so a
+ * screen should keep the values it saves until their write is reported. A request of a process
+ * that died is reported as failed, even though its write may have been committed before. A
+ * reported write has been committed, but the database syncs with synchronous=NORMAL, so a power
+ * loss right after can still roll back the last commits.
+ * <p>
+ * All methods are called on the main thread.
+ */
+final class CourseWriter {
+
+    /**
+     * Callback invoked on the main thread after a write has been applied.
+     */
+    interface Callback {
+        /**
+         * @param success whether the write changed the course
+         * @param error   message of the error the write failed with, or null
+         */
+        void onWriteFinished(boolean success, String error);
+    }
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = CourseWriter.class.getSimpleName();
+
+    private static final int WRITE_INSERT = 0;
+    private static final int WRITE_UPDATE = 1;
+    private static final int WRITE_DELETE = 2;
+
+    private static CourseWriter sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Single thread applying the writes in order
+     */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, LOG_TAG);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    });
+
+    /**
+     * Writes whose result has not been reported yet, by request
+     */
+    private final HashMap<Long, Write> mWrites = new HashMap<>();
+
+    /**
+     * Request of the next write. Requests start from the process ID, so a request saved by a
+     * screen of a process that died does not match a write of the current process.
+     */
+    private long mNextRequest = (long) Process.myPid() << 32;
+
+    /**
+     * Return the writer shared by the whole app.
+     */
+    static synchronized CourseWriter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new CourseWriter(context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    private CourseWriter(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+    }
+
+    /**
+     * Insert a new course with the given values. Return the request of the write.
+     */
+    long insert(ContentValues values) {
+        return enqueue(WRITE_INSERT, CoursesEntry.CONTENT_URI, values);
+    }
+
+    /**
+     * Update the course with the given content URI with the given values. Return the request of
+     * the write.
+     */
+    long update(Uri uri, ContentValues values) {
+        return enqueue(WRITE_UPDATE, uri, values);
+    }
+
+    /**
+     * Delete the course with the given content URI. Return the request of the write.
+     */
+    long delete(Uri uri) {
+        return enqueue(WRITE_DELETE, uri, null);
+    }
+
+    /**
+     * Report the result of the write of the given request to the given callback, replacing the
+     * callback attached before. A result that is already known is reported right away.
+     */
+    void setCallback(long request, Callback callback) {
+        Write write = mWrites.get(request);
+        if (write == null) {
+            // The request was made by a process that died, or its result was already reported.
+            // Either way it is reported as failed, without anything left to write.
+            write = new Write(request, WRITE_INSERT, null, null);
+            write.mFinished = true;
+            mWrites.put(request, write);
+        }
+
+        write.mCallback = callback;
+        if (write.mFinished) {
+            postResult(write);
+        }
+    }
+
+    /**
+     * Detach the callback of the given request. Its result is kept until the next callback is
+     * attached.
+     */
+    void clearCallback(long request) {
+        Write write = mWrites.get(request);
+        if (write != null) {
+            write.mCallback = null;
+        }
+    }
+
+    private long enqueue(int type, Uri uri, ContentValues values) {
+        long request = ++mNextRequest;
+        Write write = new Write(request, type, uri, values);
+        mWrites.put(request, write);
+        mExecutor.execute(write);
+        return request;
+    }
+
+    /**
+     * Report the result of the given finished write from the main thread's queue, so a callback
+     * being attached is not called back before its caller returns.
+     */
+    private void postResult(final Write write) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                deliverResult(write);
+            }
+        });
+    }
+
+    /**
+     * Report the result of the given finished write to the callback attached to it, if any and
+     * unless it was already reported.
+     */
+    private void deliverResult(Write write) {
+        Callback callback = write.mCallback;
+        if (callback == null || mWrites.get(write.mRequest) != write) {
+            return;
+        }
+        mWrites.remove(write.mRequest);
+        callback.onWriteFinished(write.mSuccess, write.mError);
+    }
+
+    /**
+     * One write waiting to be applied, and its result until it is reported. Only the fields set
+     * by the constructor are read off the main thread.
+     */
+    private final class Write implements Runnable {
+
+        private final long mRequest;
+        private final int mType;
+        private final Uri mUri;
+        private final ContentValues mValues;
+
+        private Callback mCallback;
+        private boolean mFinished;
+        private boolean mSuccess;
+        private String mError;
+
+        Write(long request, int type, Uri uri, ContentValues values) {
+            mRequest = request;
+            mType = type;
+            mUri = uri;
+            mValues = values;
+        }
+
+        @Override
+        public void run() {
+            boolean success = false;
+            String error = null;
+            try {
+                switch (mType) {
+                    case WRITE_INSERT:
+                        success = mContentResolver.insert(mUri, mValues) != null;
+                        break;
+                    case WRITE_UPDATE:
+                        success = mContentResolver.update(mUri, mValues, null, null) != 0;
+                        break;
+                    case WRITE_DELETE:
+                        success = mContentResolver.delete(mUri, null, null) != 0;
+                        break;
+                }
+            } catch (RuntimeException e) {
+                // Invalid values are rejected with IllegalArgumentException, which is shown to the
+                // user; anything else is unexpected
+                if (!(e instanceof IllegalArgumentException)) {
+                    Log.e(LOG_TAG, "Failed to write " + mUri, e);
+                }
+                error = e.getMessage();
+            }
+
+            final boolean finalSuccess = success;
+            final String finalError = error;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mFinished = true;
+                    mSuccess = finalSuccess;
+                    mError = finalError;
+                    deliverResult(Write.this);
+                }
+            });
+        }
+    }
+}
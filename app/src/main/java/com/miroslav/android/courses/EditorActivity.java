@@ -19,6 +19,7 @@ import android.annotation.SuppressLint;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -28,7 +29,9 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
@@ -39,6 +42,7 @@ import android.widget.Toast;
 import com.miroslav.android.courses.data.CourseContract;
 import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
 
+
 /**
  * Allows user to create a new course or edit an existing one.
  */
@@ -49,6 +53,25 @@ public class EditorActivity extends AppCompatActivity implements
      */
     private static final int EXISTING_COURSE_LOADER = 0;
 
+    /**
+     * Intent extras with the values of the existing course as last shown by the caller. When
+     * present they are shown right away, and the loader only corrects them if the course changed.
+     */
+    public static final String EXTRA_COURSE_NAME = "course_name";
+    public static final String EXTRA_COURSE_CREDIT = "course_credit";
+    public static final String EXTRA_COURSE_GRADE = "course_grade";
+
+    /**
+     * Key of the saved instance state with the values last bound to the input fields
+     */
+    private static final String STATE_BOUND_VALUES = "bound_values";
+
+    /**
+     * Keys of the saved instance state with the write still waiting to be committed
+     */
+    private static final String STATE_WRITE_REQUEST = "write_request";
+    private static final String STATE_WRITE_DELETES = "write_deletes";
+
     /**
      * Content URI for the existing course (null if it's a new course)
      */
@@ -75,6 +98,67 @@ public class EditorActivity extends AppCompatActivity implements
      */
     private boolean mCourseHasChanged = false;
 
+    /**
+     * Request of the save or delete of this editor still waiting to be committed, or 0. The
+     * editor stays open until then, so the values are not lost if the write fails or the process
+     * is killed. It is kept across configuration changes, see {@link CourseWriter}.
+     */
+    private long mWriteRequest = 0;
+
+    /**
+     * Whether {@link #mWriteRequest} deletes the course rather than saving it
+     */
+    private boolean mWriteDeletes = false;
+
+    /**
+     * Shows the outcome of the write of this editor and closes the editor once it is committed
+     */
+    private final CourseWriter.Callback mWriteCallback = new CourseWriter.Callback() {
+        @Override
+        public void onWriteFinished(boolean success, String error) {
+            createOutcomeToast().onWriteFinished(success, error);
+            mWriteRequest = 0;
+            if (success) {
+                finish();
+            } else {
+                // Keep the values on screen so the user can correct them and save again
+                invalidateOptionsMenu();
+            }
+        }
+    };
+
+    /**
+     * Name, credits and grade last shown from the course, as text. Empty for a new course.
+     */
+    private String[] mBoundValues = {"", "", ""};
+
+    /**
+     * Whether the text of any input field differs from the values last shown from the course.
+     * Unlike {@link #mCourseHasChanged}, merely touching a field does not set it.
+     */
+    private boolean mTextEdited = false;
+
+    /**
+     * TextWatcher comparing the input fields with the values last shown from the course, so
+     * {@link #mTextEdited} follows what the user actually typed, including typing a value back.
+     */
+    private final TextWatcher mTextWatcher = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            mTextEdited = !TextUtils.equals(mNameEditText.getText(), mBoundValues[0])
+                    || !TextUtils.equals(mCreditsEditText.getText(), mBoundValues[1])
+                    || !TextUtils.equals(mGradeEditText.getText(), mBoundValues[2]);
+        }
+    };
+
     /**
      * OnTouchListener that listens for any user touches on a View, implying that they are modifying
      * the view, and we change the mcourseHasChanged boolean to true.
@@ -130,14 +214,85 @@ public class EditorActivity extends AppCompatActivity implements
         mCreditsEditText.setOnTouchListener(mTouchListener);
         mGradeEditText.setOnTouchListener(mTouchListener);
 
+        // The fields restore their own text after a configuration change, so restore the values
+        // it is compared with before the watchers see it
+        if (savedInstanceState != null
+                && savedInstanceState.getStringArray(STATE_BOUND_VALUES) != null) {
+            mBoundValues = savedInstanceState.getStringArray(STATE_BOUND_VALUES);
+        }
+        mNameEditText.addTextChangedListener(mTextWatcher);
+        mCreditsEditText.addTextChangedListener(mTextWatcher);
+        mGradeEditText.addTextChangedListener(mTextWatcher);
+
+        // Take over the write the previous instance of this editor was waiting for
+        if (savedInstanceState != null) {
+            mWriteRequest = savedInstanceState.getLong(STATE_WRITE_REQUEST);
+            mWriteDeletes = savedInstanceState.getBoolean(STATE_WRITE_DELETES);
+        }
+        if (mWriteRequest != 0) {
+            CourseWriter.getInstance(this).setCallback(mWriteRequest, mWriteCallback);
+        }
+
+        // Fill in the course the catalog handed over, so the editor does not wait for the loader.
+        // After a configuration change the fields restore their own state.
+        if (mCurrentCourseUri != null && savedInstanceState == null
+                && intent.hasExtra(EXTRA_COURSE_NAME)) {
+            bindCourse(intent.getStringExtra(EXTRA_COURSE_NAME),
+                    intent.getIntExtra(EXTRA_COURSE_CREDIT, 0),
+                    intent.getIntExtra(EXTRA_COURSE_GRADE, 0));
+        }
+    }
 
+    /**
+     * Show the given course values in the input fields. Fields already showing their value are
+     * left alone, so the cursor and selection in them are kept.
+     */
+    @SuppressLint("SetTextI18n")
+    private void bindCourse(String name, int credit, int grade) {
+        // Record the values first, so the text watcher sees the new text as unedited
+        mBoundValues = new String[]{name, Integer.toString(credit), Integer.toString(grade)};
+        setTextIfChanged(mNameEditText, mBoundValues[0]);
+        setTextIfChanged(mCreditsEditText, mBoundValues[1]);
+        setTextIfChanged(mGradeEditText, mBoundValues[2]);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putStringArray(STATE_BOUND_VALUES, mBoundValues);
+        outState.putLong(STATE_WRITE_REQUEST, mWriteRequest);
+        outState.putBoolean(STATE_WRITE_DELETES, mWriteDeletes);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mWriteRequest == 0) {
+            return;
+        }
+
+        CourseWriter writer = CourseWriter.getInstance(this);
+        if (isFinishing()) {
+            // No editor takes the write over, so only its outcome is still shown
+            writer.setCallback(mWriteRequest, createOutcomeToast());
+        } else {
+            // The next instance of this editor takes the write over
+            writer.clearCallback(mWriteRequest);
+        }
+    }
+
+    private static void setTextIfChanged(EditText editText, String text) {
+        if (!TextUtils.equals(editText.getText(), text)) {
+            editText.setText(text);
+        }
     }
 
 
     /**
-     * Get user input from editor and save course into database.
+     * Get user input from editor and save course into database. Return false if there was nothing
+     * to save.
      */
-    private void saveCourse() {
+    private boolean saveCourse() {
         // Read from input fields
         // Use trim to eliminate leading or trailing white space
         String nameString = mNameEditText.getText().toString().trim();
@@ -152,7 +307,7 @@ public class EditorActivity extends AppCompatActivity implements
                 TextUtils.isEmpty(gradeString)) {
             // Since no fields were modified, we can return early without creating a new course.
             // No need to create ContentValues and no need to do any ContentProvider operations.
-            return;
+            return false;
         }
 
         // Create a ContentValues object where column names are the keys,
@@ -162,54 +317,50 @@ public class EditorActivity extends AppCompatActivity implements
         values.put(CoursesEntry.COLUMN_COURSE_CREDIT, creditString);
         values.put(CoursesEntry.COLUMN_COURSE_GRADE, gradeString);
 
-        Uri newUri = null;
+        // The write is applied in the background. The editor closes once it is committed, and
+        // stays open with the values on failure. The outcome is shown as a toast.
+        CourseWriter writer = CourseWriter.getInstance(this);
+        long request;
 
         // Determine if this is a new or existing course by checking if mCurrentcourseUri is null or not
         if (mCurrentCourseUri == null) {
-            // This is a NEW course, so insert a new course into the provider,
-            // returning the content URI for the new course.
-
-            try {
-                newUri = getContentResolver().insert(CourseContract.CoursesEntry.CONTENT_URI, values);
-
-            } catch (IllegalArgumentException e) {
-                Toast.makeText(this, e.getMessage(),
-                        Toast.LENGTH_SHORT).show();
-            }
-
-            // Show a toast message depending on whether or not the insertion was successful.
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_course_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_course_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // This is a NEW course, so insert a new course into the provider
+            request = writer.insert(values);
         } else {
-            int rowsAffected = 0;
             // Otherwise this is an EXISTING course, so update the course with content URI: mCurrentcourseUri
-            // and pass in the new ContentValues. Pass in null for the selection and selection args
-            // because mCurrentcourseUri will already identify the correct row in the database that
-            // we want to modify.
-            try {
-                rowsAffected = getContentResolver().update(mCurrentCourseUri, values, null, null);
-            } catch (IllegalArgumentException e) {
-                Toast.makeText(this, e.getMessage(),
-                        Toast.LENGTH_SHORT).show();
-            }
-            // Show a toast message depending on whether or not the update was successful.
-            if (rowsAffected == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_course_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the update was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_course_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // and pass in the new ContentValues. mCurrentcourseUri already identifies the correct
+            // row in the database that we want to modify.
+            request = writer.update(mCurrentCourseUri, values);
         }
+        startWrite(writer, request, false);
+        return true;
+    }
+
+    /**
+     * Wait for the write of the given request, disabling saving and deleting until it is
+     * reported, so the same course is not written twice.
+     */
+    private void startWrite(CourseWriter writer, long request, boolean deletes) {
+        mWriteRequest = request;
+        mWriteDeletes = deletes;
+        writer.setCallback(request, mWriteCallback);
+        invalidateOptionsMenu();
+    }
+
+    /**
+     * Return a callback showing the outcome of the write of this editor as a toast. It only holds
+     * the application context, so it can outlive the editor.
+     */
+    private CourseWriter.Callback createOutcomeToast() {
+        if (mWriteDeletes) {
+            return new OutcomeToast(this, R.string.editor_delete_course_successful,
+                    R.string.editor_delete_course_failed);
+        } else if (mCurrentCourseUri == null) {
+            return new OutcomeToast(this, R.string.editor_insert_course_successful,
+                    R.string.editor_insert_course_failed);
+        }
+        return new OutcomeToast(this, R.string.editor_update_course_successful,
+                R.string.editor_update_course_failed);
     }
 
     @Override
@@ -232,6 +383,8 @@ public class EditorActivity extends AppCompatActivity implements
             MenuItem menuItem = menu.findItem(R.id.action_delete);
             menuItem.setVisible(false);
         }
+        menu.findItem(R.id.action_save).setEnabled(mWriteRequest == 0);
+        menu.findItem(R.id.action_delete).setEnabled(mWriteRequest == 0);
         return true;
     }
 
@@ -241,10 +394,11 @@ public class EditorActivity extends AppCompatActivity implements
         switch (item.getItemId()) {
             // Respond to a click on the "Save" menu option
             case R.id.action_save:
-                // Save course to database
-                saveCourse();
-                // Exit activity
-                finish();
+                // Save course to database, the editor is closed once the save is committed
+                if (mWriteRequest == 0 && !saveCourse()) {
+                    // Nothing to save, so exit right away
+                    finish();
+                }
                 return true;
             // Respond to a click on the "Delete" menu option
             case R.id.action_delete:
@@ -324,7 +478,6 @@ public class EditorActivity extends AppCompatActivity implements
                 null);                  // Default sort order
     }
 
-    @SuppressLint("SetTextI18n")
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
         // Bail early if the cursor is null or there is less than 1 row in the cursor
@@ -332,6 +485,12 @@ public class EditorActivity extends AppCompatActivity implements
             return;
         }
 
+        // Never overwrite what the user has typed. Touching a field without changing its text
+        // does not count, so such fields still pick up changes made elsewhere.
+        if (mTextEdited) {
+            return;
+        }
+
         // Proceed with moving to the first row of the cursor and reading data from it
         // (This should be the only row in the cursor)
         if (cursor.moveToFirst()) {
@@ -346,9 +505,7 @@ public class EditorActivity extends AppCompatActivity implements
             int grade = cursor.getInt(gradeColumnIndex);
 
             // Update the views on the screen with the values from the database
-            mNameEditText.setText(name);
-            mCreditsEditText.setText(Integer.toString(credit));
-            mGradeEditText.setText(Integer.toString(grade));
+            bindCourse(name, credit, grade);
         }
     }
 
@@ -426,32 +583,39 @@ public class EditorActivity extends AppCompatActivity implements
     private void deleteCourse() {
         // Only perform the delete if this is an existing course.
         if (mCurrentCourseUri != null) {
-
-            int rowsDeleted = 0;
-
-            // Call the ContentResolver to delete the course at the given content URI.
-            // Pass in null for the selection and selection args because the mCurrentcourseUri
-            // content URI already identifies the course that we want.
-            try {
-                rowsDeleted = getContentResolver().delete(mCurrentCourseUri, null, null);
-            } catch (IllegalArgumentException e) {
-                Toast.makeText(this, e.getMessage(),
-                        Toast.LENGTH_SHORT).show();
-            }
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_course_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_course_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // Delete the course at the given content URI in the background, which already
+            // identifies the course that we want. The activity is closed once it is deleted.
+            CourseWriter writer = CourseWriter.getInstance(this);
+            startWrite(writer, writer.delete(mCurrentCourseUri), true);
+            return;
         }
 
-
         // Close the activity
         finish();
     }
-}
\ No newline at end of file
+
+    /**
+     * Shows the outcome of a background write as a toast.
+     */
+    private static class OutcomeToast implements CourseWriter.Callback {
+
+        private final Context mContext;
+        private final int mSuccessMessage;
+        private final int mFailureMessage;
+
+        OutcomeToast(Context context, int successMessage, int failureMessage) {
+            mContext = context.getApplicationContext();
+            mSuccessMessage = successMessage;
+            mFailureMessage = failureMessage;
+        }
+
+        @Override
+        public void onWriteFinished(boolean success, String error) {
+            if (error != null) {
+                Toast.makeText(mContext, error, Toast.LENGTH_SHORT).show();
+            }
+            Toast.makeText(mContext, success ? mSuccessMessage : mFailureMessage,
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+}
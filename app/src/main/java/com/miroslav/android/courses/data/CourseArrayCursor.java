@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.database.AbstractCursor;
+import android.database.CursorWindow;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+
+/**
+ * Read-only {@link android.database.Cursor} over courses held in primitive column arrays, used by
+ * {@link CourseCache} to return cached courses without building a row object per course.
+ * <p>
+ * Only results answered by the cache use this cursor, so tables larger than the cache limit (see
+ * CourseProvider.CACHE_MAX_ROWS) are still served by SQLite cursors. Building the arrays for
+ * such a table on every query would read it twice and hold all of it in memory, where a SQLite
+ * cursor only holds one window.
+ * <p>
+ * Integer columns are read straight from the arrays, and the text of small values (such as every
+ * valid credit and grade) comes from a shared table, so moving through the cursor and reading it
+ * does not allocate. The arrays must not be changed while the cursor is open.
+ */
+final class CourseArrayCursor extends AbstractCursor {
+
+    /**
+     * Indices of the course columns, as used in the column mapping
+     */
+    static final int COLUMN_ID = 0;
+    static final int COLUMN_NAME = 1;
+    static final int COLUMN_CREDIT = 2;
+    static final int COLUMN_GRADE = 3;
+
+    /**
+     * Names of the course columns, in the order of their indices
+     */
+    static final String[] COLUMN_NAMES = {
+            CoursesEntry._ID,
+            CoursesEntry.COLUMN_COURSE_NAME,
+            CoursesEntry.COLUMN_COURSE_CREDIT,
+            CoursesEntry.COLUMN_COURSE_GRADE};
+
+    /**
+     * Text of the values from 0 up to the largest valid credit
+     */
+    private static final String[] SMALL_INT_STRINGS = new String[16];
+
+    static {
+        for (int i = 0; i < SMALL_INT_STRINGS.length; i++) {
+            SMALL_INT_STRINGS[i] = String.valueOf(i);
+        }
+    }
+
+    private final String[] mColumnNames;
+    private final int[] mColumns;
+
+    private final long[] mIds;
+    private final String[] mNames;
+    private final int[] mCredits;
+    private final int[] mGrades;
+
+    /**
+     * Index in the arrays of the first row of the cursor
+     */
+    private final int mOffset;
+    private final int mCount;
+
+    /**
+     * Constructs a new {@link CourseArrayCursor} over the given range of the arrays.
+     *
+     * @param columnNames names of the columns of the cursor
+     * @param columns     index of the course column (see {@link #COLUMN_NAMES}) for each column
+     * @param offset      index in the arrays of the first row
+     * @param count       number of rows
+     */
+    CourseArrayCursor(String[] columnNames, int[] columns, long[] ids, String[] names, int[] credits,
+                      int[] grades, int offset, int count) {
+        mColumnNames = columnNames;
+        mColumns = columns;
+        mIds = ids;
+        mNames = names;
+        mCredits = credits;
+        mGrades = grades;
+        mOffset = offset;
+        mCount = count;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        int index = checkRow();
+        switch (mColumns[column]) {
+            case COLUMN_NAME:
+                return mNames[index];
+            case COLUMN_ID:
+                return String.valueOf(mIds[index]);
+            default:
+                return toString(getIntValue(column, index));
+        }
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        int index = checkRow();
+        switch (mColumns[column]) {
+            case COLUMN_ID:
+                return mIds[index];
+            case COLUMN_NAME:
+                return parseLong(mNames[index]);
+            default:
+                return getIntValue(column, index);
+        }
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        if (mColumns[column] == COLUMN_NAME) {
+            // Text is read as a real number, like a SQLite cursor does, so "7.5" is not cut to 7
+            return parseDouble(mNames[checkRow()]);
+        }
+        return getLong(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mColumns[column] == COLUMN_NAME ? FIELD_TYPE_STRING : FIELD_TYPE_INTEGER;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        // The courses table does not allow NULL in any of its columns
+        checkRow();
+        return false;
+    }
+
+    /**
+     * Copy the rows starting at the given position into the window, keeping integer columns as
+     * integers. Used when the cursor is sent to another process.
+     */
+    @Override
+    public void fillWindow(int position, CursorWindow window) {
+        if (position < 0 || position >= mCount) {
+            return;
+        }
+
+        window.acquireReference();
+        try {
+            window.clear();
+            window.setStartPosition(position);
+            window.setNumColumns(mColumns.length);
+            for (int row = position; row < mCount; row++) {
+                if (!window.allocRow()) {
+                    // The window is full, the remaining rows go into the next one
+                    break;
+                }
+                if (!putRow(window, mOffset + row, row)) {
+                    window.freeLastRow();
+                    break;
+                }
+            }
+        } finally {
+            window.releaseReference();
+        }
+    }
+
+    /**
+     * Put the row at the given index of the arrays into the given row of the window. Return false
+     * if the window ran out of space.
+     */
+    private boolean putRow(CursorWindow window, int index, int row) {
+        for (int column = 0; column < mColumns.length; column++) {
+            boolean stored;
+            switch (mColumns[column]) {
+                case COLUMN_ID:
+                    stored = window.putLong(mIds[index], row, column);
+                    break;
+                case COLUMN_NAME:
+                    stored = window.putString(mNames[index], row, column);
+                    break;
+                default:
+                    stored = window.putLong(getIntValue(column, index), row, column);
+            }
+            if (!stored) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the value of the given credit or grade column at the given index of the arrays.
+     */
+    private int getIntValue(int column, int index) {
+        return mColumns[column] == COLUMN_CREDIT ? mCredits[index] : mGrades[index];
+    }
+
+    /**
+     * Return the index in the arrays of the current row, or throw if the cursor is not on a row.
+     */
+    private int checkRow() {
+        int position = getPosition();
+        if (position < 0 || position >= mCount) {
+            throw new IllegalStateException("Cursor is not positioned on a row, position " + position
+                    + " of " + mCount);
+        }
+        return mOffset + position;
+    }
+
+    /**
+     * Return the text of the given value, shared for small values.
+     */
+    private static String toString(int value) {
+        if (value >= 0 && value < SMALL_INT_STRINGS.length) {
+            return SMALL_INT_STRINGS[value];
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Return the given text as a number, or 0 if it is not one, the way SQLite converts text.
+     */
+    private static long parseLong(String text) {
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static double parseDouble(String text) {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+import com.miroslav.android.courses.data.CourseContract.SummaryEntry;
+import com.miroslav.android.courses.grading.GradeTotals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the courses table used by {@link CourseProvider} to answer repeated reads
+ * without going to SQLite. Courses are kept ordered by ID in primitive column arrays, names are
+ * shared between courses with the same name, and the running totals are kept next to them.
+ * <p>
+ * The cache loads the whole table on the first read and is then kept up to date by the provider
+ * after every committed write, which the provider records while still holding the cache's lock
+ * taken before its transaction. Tables with more than the configured number of rows are not cached.
+ * All methods are thread-safe.
+ */
+final class CourseCache {
+
+    /**
+     * Summary columns the cache can answer, in the order used when no projection is given
+     */
+    private static final String[] SUMMARY_COLUMNS = {
+            SummaryEntry._ID,
+            SummaryEntry.COLUMN_COURSE_COUNT,
+            SummaryEntry.COLUMN_GRADE_SUM,
+            SummaryEntry.COLUMN_CREDIT_SUM,
+            SummaryEntry.COLUMN_WEIGHTED_SUM,
+            SummaryEntry.COLUMN_AVERAGE_GRADE,
+            SummaryEntry.COLUMN_WEIGHTED_AVERAGE_GRADE};
+
+    /**
+     * Largest number of courses the cache holds
+     */
+    private final int mMaxRows;
+
+    private long[] mIds = new long[0];
+    private String[] mNames = new String[0];
+    private int[] mCredits = new int[0];
+    private int[] mGrades = new int[0];
+    private int mSize;
+
+    /**
+     * Totals over the cached courses, kept up to date with every recorded write
+     */
+    private final GradeTotals mTotals = new GradeTotals();
+
+    /**
+     * Whether the arrays hold the current table
+     */
+    private boolean mLoaded;
+
+    /**
+     * Whether the arrays are read by a cursor handed out, in which case they are copied before
+     * the next change
+     */
+    private boolean mShared;
+
+    /**
+     * Whether the table was found too large to cache, until the next invalidation
+     */
+    private boolean mTooLarge;
+
+    /**
+     * Single instance of every course name in the cache
+     */
+    private final HashMap<String, String> mNamePool = new HashMap<>();
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * Constructs a new {@link CourseCache}.
+     *
+     * @param maxRows largest number of courses to hold
+     */
+    CourseCache(int maxRows) {
+        mMaxRows = maxRows;
+    }
+
+    /**
+     * Return all courses ordered by ID with the given columns, or null if the projection asks for
+     * a column the cache does not hold or the table is too large to cache.
+     */
+    synchronized Cursor queryCourses(SQLiteDatabase database, String[] projection) {
+        if (projection == null) {
+            projection = CourseArrayCursor.COLUMN_NAMES;
+        }
+        int[] columns = resolve(projection, CourseArrayCursor.COLUMN_NAMES);
+        if (columns == null || !ensureLoaded(database)) {
+            return null;
+        }
+
+        mShared = true;
+        return new CourseArrayCursor(projection, columns, mIds, mNames, mCredits, mGrades, 0, mSize);
+    }
+
+    /**
+     * Return the course with the given ID with the given columns, or null if the cache cannot
+     * answer the query.
+     */
+    synchronized Cursor queryCourse(SQLiteDatabase database, long id, String[] projection) {
+        if (projection == null) {
+            projection = CourseArrayCursor.COLUMN_NAMES;
+        }
+        int[] columns = resolve(projection, CourseArrayCursor.COLUMN_NAMES);
+        if (columns == null || !ensureLoaded(database)) {
+            return null;
+        }
+
+        int position = Arrays.binarySearch(mIds, 0, mSize, id);
+        mShared = true;
+        return new CourseArrayCursor(projection, columns, mIds, mNames, mCredits, mGrades,
+                Math.max(position, 0), position >= 0 ? 1 : 0);
+    }
+
+    /**
+     * Return the running totals with the given columns of {@link SummaryEntry}, or null if the
+     * cache cannot answer the query. The summary table holds the same totals in a single row, so
+     * the table is not loaded for them; they are only answered while the courses are cached.
+     */
+    synchronized Cursor querySummary(String[] projection) {
+        if (projection == null) {
+            projection = SUMMARY_COLUMNS;
+        }
+        int[] columns = resolve(projection, SUMMARY_COLUMNS);
+        if (columns == null || !checkLoaded()) {
+            return null;
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        MatrixCursor.RowBuilder row = cursor.newRow();
+        for (int column : columns) {
+            switch (column) {
+                case 0:
+                    row.add(SummaryEntry.SUMMARY_ROW_ID);
+                    break;
+                case 1:
+                    row.add(mSize);
+                    break;
+                case 2:
+                    row.add(mTotals.getGradeSum());
+                    break;
+                case 3:
+                    row.add(mTotals.getCreditSum());
+                    break;
+                case 4:
+                    row.add(mTotals.getWeightedSum());
+                    break;
+                case 5:
+                    // Like AVG, the average of no courses is NULL
+                    row.add(mSize > 0 ? mTotals.getAverageGrade() : null);
+                    break;
+                default:
+                    row.add(mSize > 0 ? mTotals.getWeightedAverageGrade() : null);
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Return a copy of the totals over all courses, or null if the courses are not cached. Like
+     * {@link #querySummary}, this does not load the table.
+     */
+    synchronized GradeTotals getTotals() {
+        if (!checkLoaded()) {
+            return null;
+        }
+        return new GradeTotals(mTotals.getCount(), mTotals.getGradeSum(), mTotals.getCreditSum(),
+                mTotals.getWeightedSum());
+    }
+
+    /**
+     * Record a course inserted by a committed write.
+     */
+    synchronized void onInsert(long id, String name, int credit, int grade) {
+        if (!mLoaded) {
+            return;
+        }
+
+        // The provider holds the cache across a recorded write, so no load runs between its
+        // commit and this call, but a row already held is left alone all the same
+        int position = Arrays.binarySearch(mIds, 0, mSize, id);
+        if (position >= 0) {
+            return;
+        }
+        if (mSize == mMaxRows) {
+            invalidate();
+            return;
+        }
+
+        position = -position - 1;
+        ensureCapacity(mSize + 1);
+        unshare();
+        System.arraycopy(mIds, position, mIds, position + 1, mSize - position);
+        System.arraycopy(mNames, position, mNames, position + 1, mSize - position);
+        System.arraycopy(mCredits, position, mCredits, position + 1, mSize - position);
+        System.arraycopy(mGrades, position, mGrades, position + 1, mSize - position);
+        mSize++;
+
+        mIds[position] = id;
+        mNames[position] = intern(name);
+        mCredits[position] = credit;
+        mGrades[position] = grade;
+        mTotals.add(credit, grade);
+    }
+
+    /**
+     * Record the given values written to the course with the given ID by a committed update.
+     */
+    synchronized void onUpdate(long id, ContentValues values) {
+        if (!mLoaded) {
+            return;
+        }
+
+        int position = Arrays.binarySearch(mIds, 0, mSize, id);
+        if (position < 0) {
+            return;
+        }
+
+        unshare();
+        mTotals.remove(mCredits[position], mGrades[position]);
+        if (values.containsKey(CoursesEntry.COLUMN_COURSE_NAME)) {
+            mNames[position] = intern(values.getAsString(CoursesEntry.COLUMN_COURSE_NAME));
+        }
+        if (values.containsKey(CoursesEntry.COLUMN_COURSE_CREDIT)) {
+            mCredits[position] = values.getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT);
+        }
+        if (values.containsKey(CoursesEntry.COLUMN_COURSE_GRADE)) {
+            mGrades[position] = values.getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE);
+        }
+        mTotals.add(mCredits[position], mGrades[position]);
+    }
+
+    /**
+     * Record the course with the given ID deleted by a committed write.
+     */
+    synchronized void onDelete(long id) {
+        if (!mLoaded) {
+            return;
+        }
+
+        int position = Arrays.binarySearch(mIds, 0, mSize, id);
+        if (position < 0) {
+            return;
+        }
+
+        unshare();
+        mTotals.remove(mCredits[position], mGrades[position]);
+        int moved = mSize - position - 1;
+        System.arraycopy(mIds, position + 1, mIds, position, moved);
+        System.arraycopy(mNames, position + 1, mNames, position, moved);
+        System.arraycopy(mCredits, position + 1, mCredits, position, moved);
+        System.arraycopy(mGrades, position + 1, mGrades, position, moved);
+        mSize--;
+        mNames[mSize] = null;
+    }
+
+    /**
+     * Drop the cached courses, so the next read loads the table again. Used after writes whose
+     * rows are not known one by one.
+     */
+    synchronized void invalidate() {
+        mLoaded = false;
+        mTooLarge = false;
+        mIds = new long[0];
+        mNames = new String[0];
+        mCredits = new int[0];
+        mGrades = new int[0];
+        mSize = 0;
+        mShared = false;
+        mNamePool.clear();
+    }
+
+    /**
+     * Return the number of reads answered from memory.
+     */
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    /**
+     * Return the number of reads that had to load the table, or were not answered from memory.
+     */
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * Return the number of courses held in memory.
+     */
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Return whether the cache holds the current table, without loading it.
+     */
+    private boolean checkLoaded() {
+        if (mLoaded) {
+            mHits.incrementAndGet();
+            return true;
+        }
+        mMisses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Make sure the cache holds the current table, loading it if needed. Return false if the
+     * table is too large to cache.
+     */
+    private boolean ensureLoaded(SQLiteDatabase database) {
+        if (mLoaded) {
+            mHits.incrementAndGet();
+            return true;
+        }
+
+        mMisses.incrementAndGet();
+        if (mTooLarge) {
+            return false;
+        }
+
+        long count = DatabaseUtils.queryNumEntries(database, CoursesEntry.TABLE_NAME);
+        if (count > mMaxRows) {
+            mTooLarge = true;
+            return false;
+        }
+
+        Cursor cursor = database.query(CoursesEntry.TABLE_NAME, CourseArrayCursor.COLUMN_NAMES,
+                null, null, null, null, CoursesEntry._ID);
+        try {
+            int size = cursor.getCount();
+            mIds = new long[size];
+            mNames = new String[size];
+            mCredits = new int[size];
+            mGrades = new int[size];
+            mSize = 0;
+            mShared = false;
+            mTotals.clear();
+            mNamePool.clear();
+
+            while (cursor.moveToNext() && mSize < size) {
+                mIds[mSize] = cursor.getLong(0);
+                mNames[mSize] = intern(cursor.getString(1));
+                mCredits[mSize] = cursor.getInt(2);
+                mGrades[mSize] = cursor.getInt(3);
+                mTotals.add(mCredits[mSize], mGrades[mSize]);
+                mSize++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        mLoaded = true;
+        return true;
+    }
+
+    /**
+     * Return, for every column of the projection, its index in the available columns, or null if
+     * one of them is not available.
+     */
+    private static int[] resolve(String[] projection, String[] available) {
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            int index = Arrays.asList(available).indexOf(projection[i]);
+            if (index < 0) {
+                return null;
+            }
+            columns[i] = index;
+        }
+        return columns;
+    }
+
+    /**
+     * Return the single cached instance of the given name.
+     */
+    private String intern(String name) {
+        String pooled = mNamePool.get(name);
+        if (pooled == null) {
+            mNamePool.put(name, name);
+            pooled = name;
+        }
+        return pooled;
+    }
+
+    /**
+     * Grow the column arrays so they can hold at least the given number of courses.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mIds.length) {
+            return;
+        }
+        int newCapacity = Math.min(Math.max(capacity, mIds.length * 2), mMaxRows);
+        copyArrays(newCapacity);
+    }
+
+    /**
+     * Copy the column arrays if a cursor handed out is reading them, so changes do not show
+     * through open cursors.
+     */
+    private void unshare() {
+        if (mShared) {
+            copyArrays(mIds.length);
+        }
+    }
+
+    /**
+     * Replace the column arrays with copies of the given capacity.
+     */
+    private void copyArrays(int capacity) {
+        mIds = Arrays.copyOf(mIds, capacity);
+        mNames = Arrays.copyOf(mNames, capacity);
+        mCredits = Arrays.copyOf(mCredits, capacity);
+        mGrades = Arrays.copyOf(mGrades, capacity);
+        mShared = false;
+    }
+}
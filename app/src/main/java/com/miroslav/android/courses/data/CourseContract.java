@@ -51,6 +51,182 @@ public final class CourseContract {
      */
     public static final String PATH_COURSES = "courses";
 
+    /**
+     * Path (appended to the courses path) for the running totals over all courses.
+     * For instance, content://com.miroslav.android.courses/courses/summary
+     */
+    public static final String PATH_SUMMARY = "summary";
+
+    /**
+     * Path (appended to the courses path) for searching courses by name.
+     * For instance, content://com.miroslav.android.courses/courses/search/math
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path (appended to the courses path) for reading and writing all courses as a CSV file.
+     * For instance, content://com.miroslav.android.courses/courses/csv
+     */
+    public static final String PATH_CSV = "csv";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} returning the totals over all courses
+     * under the AGGREGATE_* keys below. Cheaper than querying {@link SummaryEntry#CONTENT_URI}
+     * for callers that need the numbers once and do not watch for changes.
+     */
+    public static final String METHOD_GET_AGGREGATES = "aggregates";
+
+    /**
+     * Number of courses and sums of grades, credits and grade * credits over all courses of the
+     * {@link #METHOD_GET_AGGREGATES} result, as longs.
+     */
+    public static final String AGGREGATE_COURSE_COUNT = SummaryEntry.COLUMN_COURSE_COUNT;
+    public static final String AGGREGATE_GRADE_SUM = SummaryEntry.COLUMN_GRADE_SUM;
+    public static final String AGGREGATE_CREDIT_SUM = SummaryEntry.COLUMN_CREDIT_SUM;
+    public static final String AGGREGATE_WEIGHTED_SUM = SummaryEntry.COLUMN_WEIGHTED_SUM;
+
+    /**
+     * Average grade, and average grade weighted by credits, of the {@link #METHOD_GET_AGGREGATES}
+     * result, as doubles. Left out while there are no courses.
+     */
+    public static final String AGGREGATE_AVERAGE_GRADE = SummaryEntry.COLUMN_AVERAGE_GRADE;
+    public static final String AGGREGATE_WEIGHTED_AVERAGE_GRADE =
+            SummaryEntry.COLUMN_WEIGHTED_AVERAGE_GRADE;
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} returning the state of the caches of
+     * the provider, with the counters under the DIAGNOSTICS_* keys below.
+     */
+    public static final String METHOD_GET_DIAGNOSTICS = "diagnostics";
+
+    /**
+     * Keys of the {@link #METHOD_GET_DIAGNOSTICS} result. Counts are longs, except the number
+     * of cached results and result evictions which are ints, and the hit ratios which are doubles
+     * between 0 and 1.
+     */
+    public static final String DIAGNOSTICS_RESULT_CACHE_HITS = "result_cache_hits";
+    public static final String DIAGNOSTICS_RESULT_CACHE_MISSES = "result_cache_misses";
+    public static final String DIAGNOSTICS_RESULT_CACHE_HIT_RATIO = "result_cache_hit_ratio";
+    public static final String DIAGNOSTICS_RESULT_CACHE_EVICTIONS = "result_cache_evictions";
+    public static final String DIAGNOSTICS_RESULT_CACHE_SIZE = "result_cache_size";
+    public static final String DIAGNOSTICS_WRITE_GENERATION = "write_generation";
+    public static final String DIAGNOSTICS_COURSE_CACHE_HITS = "course_cache_hits";
+    public static final String DIAGNOSTICS_COURSE_CACHE_MISSES = "course_cache_misses";
+    public static final String DIAGNOSTICS_COURSE_CACHE_HIT_RATIO = "course_cache_hit_ratio";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} writing all courses to a compact
+     * binary snapshot, a fraction of the size of the database file. The argument is the absolute
+     * path of the snapshot file, which is only replaced once the snapshot is complete. The result
+     * has the {@link #SNAPSHOT_COURSES} and {@link #SNAPSHOT_BYTES} counts. Reads go on while
+     * the snapshot is written, writes wait for it. Throws IllegalArgumentException if the file
+     * cannot be written.
+     */
+    public static final String METHOD_WRITE_SNAPSHOT = "write_snapshot";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} replacing all courses with those of
+     * a snapshot written by {@link #METHOD_WRITE_SNAPSHOT}, keeping their IDs. The argument is
+     * the absolute path of the snapshot file. The result has the {@link #SNAPSHOT_COURSES} and
+     * {@link #SNAPSHOT_BYTES} counts. Throws IllegalArgumentException if the file is not an
+     * intact snapshot, in which case the courses are left untouched.
+     */
+    public static final String METHOD_RESTORE_SNAPSHOT = "restore_snapshot";
+
+    /**
+     * Number of courses and size in bytes of the snapshot of the {@link #METHOD_WRITE_SNAPSHOT}
+     * and {@link #METHOD_RESTORE_SNAPSHOT} results, as longs.
+     */
+    public static final String SNAPSHOT_COURSES = "courses";
+    public static final String SNAPSHOT_BYTES = "bytes";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} returning the state of the last CSV
+     * import through {@link CoursesEntry#CONTENT_CSV_URI} since the provider started, or null if
+     * there was none. The result has the {@link #IMPORT_STATE}, {@link #IMPORT_ROWS} and, for a
+     * failed import, {@link #IMPORT_ERROR} keys. Used where the pipe cannot carry the error.
+     */
+    public static final String METHOD_GET_IMPORT_STATUS = "import_status";
+
+    /**
+     * State of the import, one of the IMPORT_STATE_* values below, as a String.
+     */
+    public static final String IMPORT_STATE = "state";
+    public static final String IMPORT_STATE_RUNNING = "running";
+    public static final String IMPORT_STATE_SUCCEEDED = "succeeded";
+    public static final String IMPORT_STATE_FAILED = "failed";
+
+    /**
+     * Number of courses added by a succeeded import, as a long.
+     */
+    public static final String IMPORT_ROWS = "rows";
+
+    /**
+     * Message of the error a failed import stopped with, as a String.
+     */
+    public static final String IMPORT_ERROR = "error";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} returning the latency and throughput
+     * counters of the provider since it started or since the last {@link #METHOD_RESET_METRICS}.
+     * <p>
+     * The result has the {@link #METRICS_TRANSACTIONS}, {@link #METRICS_NOTIFICATIONS},
+     * {@link #METRICS_COALESCED_NOTIFICATIONS} and {@link #METRICS_CANCELLED_QUERIES} counts,
+     * and a Bundle with the METRICS_* values below for every operation and URI that ran, under
+     * the key "&lt;operation&gt;/&lt;uri&gt;". The operation is one of query, insert,
+     * bulk_insert, update, delete, apply_batch, export, import, write_snapshot, restore_snapshot
+     * or aggregates, and the URI one of courses, course_id, summary, search or csv, e.g.
+     * "query/course_id". Batches, whose operations are recorded one by one as well, and
+     * snapshots are recorded under courses, the {@link #METHOD_GET_AGGREGATES} call under
+     * summary.
+     */
+    public static final String METHOD_GET_METRICS = "metrics";
+
+    /**
+     * Method of {@link android.content.ContentResolver#call} setting all metrics back to 0.
+     */
+    public static final String METHOD_RESET_METRICS = "reset_metrics";
+
+    /**
+     * Number of database transactions, of change notifications sent, and of changes merged into
+     * a notification already pending for the same URI, as longs.
+     */
+    public static final String METRICS_TRANSACTIONS = "transactions";
+    public static final String METRICS_NOTIFICATIONS = "notifications";
+    public static final String METRICS_COALESCED_NOTIFICATIONS = "coalesced_notifications";
+
+    /**
+     * Number of queries stopped because their caller cancelled them, as a long.
+     */
+    public static final String METRICS_CANCELLED_QUERIES = "cancelled_queries";
+
+    /**
+     * Number of calls and of rows returned or written, as longs.
+     */
+    public static final String METRICS_COUNT = "count";
+    public static final String METRICS_ROWS = "rows";
+
+    /**
+     * Total and longest time taken over all calls, in microseconds, as longs.
+     */
+    public static final String METRICS_TOTAL_MICROS = "total_us";
+    public static final String METRICS_MAX_MICROS = "max_us";
+
+    /**
+     * Time within which 50, 90 and 99 percent of the calls completed, in microseconds, as longs.
+     * These are read from {@link #METRICS_HISTOGRAM}, so they are powers of 2.
+     */
+    public static final String METRICS_P50_MICROS = "p50_us";
+    public static final String METRICS_P90_MICROS = "p90_us";
+    public static final String METRICS_P99_MICROS = "p99_us";
+
+    /**
+     * Latency histogram as a long array. Element i is the number of calls that took from 2^i up
+     * to 2^(i+1) microseconds. The first element also counts faster calls and the last one also
+     * slower calls.
+     */
+    public static final String METRICS_HISTOGRAM = "histogram";
+
     /**
      * Inner class that defines constant values for the courses database table.
      * Each entry in the table represents a single course.
@@ -58,10 +234,46 @@ public final class CourseContract {
     public static final class CoursesEntry implements BaseColumns {
 
         /**
-         * The content URI to access the course data in the provider
+         * The content URI to access the course data in the provider.
+         * <p>
+         * Writes of a single course (inserts, and updates or deletes through the URI of the
+         * course) notify the URI of that course, so observers registered for descendants of this
+         * URI receive the URI of the changed course, and observers of other courses are not
+         * notified. Writes of several courses notify this URI.
+         * <p>
+         * Notifications of single-course writes are gathered for a short window (100 ms by
+         * default) and sent together, so they may arrive that long after the write returned.
+         * Bulk inserts, batches and CSV imports notify as soon as they are committed.
          */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_COURSES);
 
+        /**
+         * The content URI to search courses by name in the provider. Append the search text to it
+         * with {@link #buildSearchUri(String)}.
+         * <p>
+         * Courses are found through the full-text index, but unless a sort order is given they are
+         * not ordered by full-text relevance: names starting with the search text come first, then
+         * shorter names before longer ones, then by name.
+         */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * The content URI to export and import courses as CSV through
+         * {@link ContentResolver#openFileDescriptor}. Opened for reading ("r") it streams all
+         * courses in the order they were added, under a header line naming the name, credits and
+         * grade columns. Both ends are pipes, so files of any size are streamed.
+         * <p>
+         * Opened for writing ("w") it adds the courses written to it once the descriptor is
+         * closed. The file is parsed and validated while it is written, without holding the
+         * database lock, so a slow writer does not block other writes. The courses are then added
+         * in one transaction, so a file with an invalid line adds nothing. From API 19 the pipe
+         * is reliable: a failed import closes the provider's end with the error, which makes
+         * further writes fail and is reported by
+         * {@link android.os.ParcelFileDescriptor#checkError()}. On older versions, and to learn
+         * the outcome after closing, call {@link CourseContract#METHOD_GET_IMPORT_STATUS}.
+         */
+        public static final Uri CONTENT_CSV_URI = Uri.withAppendedPath(CONTENT_URI, PATH_CSV);
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of courses.
          */
@@ -74,6 +286,11 @@ public final class CourseContract {
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_COURSES;
 
+        /**
+         * The MIME type of the {@link #CONTENT_CSV_URI}.
+         */
+        public static final String CONTENT_CSV_TYPE = "text/csv";
+
         /**
          * Name of database table for courses
          */
@@ -107,14 +324,156 @@ public final class CourseContract {
          */
         public final static String COLUMN_COURSE_GRADE = "grade";
 
+        /**
+         * Query parameter of {@link #CONTENT_URI} with the maximum number of courses to return.
+         * When present, courses are returned one page at a time, ordered by
+         * {@link #QUERY_PARAMETER_SORT} and then by {@link #_ID}.
+         */
+        public final static String QUERY_PARAMETER_LIMIT = "limit";
+
+        /**
+         * Query parameter with the column a page of courses is ordered by, one of {@link #_ID},
+         * {@link #COLUMN_COURSE_NAME}, {@link #COLUMN_COURSE_CREDIT} or
+         * {@link #COLUMN_COURSE_GRADE}. Defaults to {@link #_ID}.
+         */
+        public final static String QUERY_PARAMETER_SORT = "sort";
 
-        @SuppressWarnings("BooleanMethodIsAlwaysInverted")
-        public static boolean isValid(int value, int min, int max) {
-            return value >= min && value <= max;
+        /**
+         * Query parameters with the sort column value and the ID of the last course of the
+         * previous page. The page starts right after that course.
+         */
+        public final static String QUERY_PARAMETER_AFTER = "after";
+        public final static String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        /**
+         * Query parameters with the sort column value and the ID of the first course of the
+         * following page. The page ends right before that course, and is returned in reverse order.
+         */
+        public final static String QUERY_PARAMETER_BEFORE = "before";
+        public final static String QUERY_PARAMETER_BEFORE_ID = "before_id";
+
+        /**
+         * Return the URI for the courses whose name contains words starting with the words of the
+         * given search text, ordered as described for {@link #CONTENT_SEARCH_URI}.
+         */
+        public static Uri buildSearchUri(String query) {
+            return Uri.withAppendedPath(CONTENT_SEARCH_URI, Uri.encode(query));
         }
 
 
     }
 
+    /**
+     * Inner class that defines constant values for the full-text index over course names.
+     * The index is kept in sync with the courses table by triggers, and each of its rows has the
+     * ID of the course it indexes as docid.
+     */
+    public static final class SearchEntry {
+
+        /**
+         * Name of the full-text table indexing course names
+         */
+        public final static String TABLE_NAME = "courses_fts";
+
+        /**
+         * ID of the indexed course.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_DOCID = "docid";
+
+        /**
+         * Name of the indexed course.
+         * <p>
+         * Type: TEXT
+         */
+        public final static String COLUMN_COURSE_NAME = "name";
+
+    }
+
+    /**
+     * Inner class that defines constant values for the course summary database table.
+     * The table holds a single row with running totals over the courses table, kept up to
+     * date by the provider on every write so the totals can be read without scanning courses.
+     */
+    public static final class SummaryEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the course summary in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(CoursesEntry.CONTENT_URI, PATH_SUMMARY);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for the course summary.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_COURSES
+                        + "/" + PATH_SUMMARY;
+
+        /**
+         * Name of database table for the course summary
+         */
+        public final static String TABLE_NAME = "course_summary";
+
+        /**
+         * Unique ID number of the single summary row.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Number of courses.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_COURSE_COUNT = "course_count";
+
+        /**
+         * Sum of the grades of all courses.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_GRADE_SUM = "grade_sum";
+
+        /**
+         * Sum of the credits of all courses, the ECTS credits earned so far since only passed
+         * courses are stored.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_CREDIT_SUM = "credit_sum";
+
+        /**
+         * Sum of grade multiplied by credits over all courses.
+         * <p>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_WEIGHTED_SUM = "weighted_sum";
+
+        /**
+         * Average grade over all courses, NULL while there are no courses.
+         * Only available through {@link #CONTENT_URI}.
+         * <p>
+         * Type: REAL
+         */
+        public final static String COLUMN_AVERAGE_GRADE = "average_grade";
+
+        /**
+         * Average grade weighted by credits over all courses, that is the weighted sum divided by
+         * the credit sum, NULL while there are no courses. Only available through
+         * {@link #CONTENT_URI}.
+         * <p>
+         * Type: REAL
+         */
+        public final static String COLUMN_WEIGHTED_AVERAGE_GRADE = "weighted_average_grade";
+
+        /**
+         * ID of the single summary row.
+         */
+        public final static long SUMMARY_ROW_ID = 1;
+
+    }
+
 }
 
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.content.ContentValues;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Reads and writes courses as CSV (RFC 4180): one course per line with the name, credits and
+ * grade columns, after a header line with the column names. Fields holding commas, quotes or line
+ * breaks are quoted. Rows are handled one at a time, so files of any size are streamed.
+ */
+final class CourseCsv {
+
+    /**
+     * Columns of an exported file, in order
+     */
+    static final String[] COLUMNS = {
+            CoursesEntry.COLUMN_COURSE_NAME,
+            CoursesEntry.COLUMN_COURSE_CREDIT,
+            CoursesEntry.COLUMN_COURSE_GRADE};
+
+    private CourseCsv() {
+    }
+
+    /**
+     * Write the header line with the column names.
+     */
+    static void writeHeader(Writer writer) throws IOException {
+        writeRecord(writer, COLUMNS[0], COLUMNS[1], COLUMNS[2]);
+    }
+
+    /**
+     * Write one course as a line.
+     */
+    static void writeCourse(Writer writer, String name, int credit, int grade) throws IOException {
+        writeRecord(writer, name, Integer.toString(credit), Integer.toString(grade));
+    }
+
+    private static void writeRecord(Writer writer, String name, String credit, String grade)
+            throws IOException {
+        writeField(writer, name);
+        writer.write(',');
+        writeField(writer, credit);
+        writer.write(',');
+        writeField(writer, grade);
+        writer.write("\r\n");
+    }
+
+    private static void writeField(Writer writer, String field) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+
+        if (!quote) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        writer.write(field.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Reads courses from CSV one line at a time. If the first line names all columns it is taken
+     * as the header and the columns may come in any order, otherwise the columns are expected in
+     * the order of {@link #COLUMNS}.
+     */
+    static final class Reader {
+
+        private final BufferedReader mReader;
+        private final ArrayList<String> mFields = new ArrayList<>();
+        private final StringBuilder mField = new StringBuilder();
+        private int mLineNumber;
+
+        /**
+         * Positions of the columns of {@link #COLUMNS} in the records, or null before the first
+         * line has been read
+         */
+        private int[] mColumns;
+
+        Reader(BufferedReader reader) {
+            mReader = reader;
+        }
+
+        /**
+         * Return the number of the last line read, starting at 1.
+         */
+        int getLineNumber() {
+            return mLineNumber;
+        }
+
+        /**
+         * Return the next course as content values with the columns of {@link #COLUMNS}, or null
+         * at the end of the input. The values are not validated.
+         */
+        ContentValues readCourse() throws IOException {
+            String[] record = readRecord();
+            if (mColumns == null && record != null) {
+                mColumns = getColumns(record);
+                if (mColumns != null) {
+                    record = readRecord();
+                } else {
+                    mColumns = new int[]{0, 1, 2};
+                }
+            }
+            if (record == null) {
+                return null;
+            }
+
+            ContentValues course = new ContentValues(COLUMNS.length);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (mColumns[i] >= record.length) {
+                    throw new CsvException("Missing " + COLUMNS[i] + " at line " + mLineNumber);
+                }
+                String value = record[mColumns[i]];
+                // Numbers may be padded, names are kept as they are
+                course.put(COLUMNS[i], i == 0 ? value : value.trim());
+            }
+            return course;
+        }
+
+        /**
+         * Return the positions of the columns of {@link #COLUMNS} if the given record is a header
+         * naming all of them, null otherwise.
+         */
+        private static int[] getColumns(String[] record) {
+            int[] columns = new int[COLUMNS.length];
+            for (int i = 0; i < COLUMNS.length; i++) {
+                columns[i] = -1;
+                for (int j = 0; j < record.length && columns[i] == -1; j++) {
+                    if (COLUMNS[i].equalsIgnoreCase(record[j].trim())) {
+                        columns[i] = j;
+                    }
+                }
+                if (columns[i] == -1) {
+                    return null;
+                }
+            }
+            return columns;
+        }
+
+        /**
+         * Return the fields of the next record, or null at the end of the input. Empty lines are
+         * skipped.
+         */
+        private String[] readRecord() throws IOException {
+            String line;
+            do {
+                line = mReader.readLine();
+                if (line == null) {
+                    return null;
+                }
+                mLineNumber++;
+            } while (line.isEmpty());
+
+            mFields.clear();
+            mField.setLength(0);
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == line.length()) {
+                    if (!quoted) {
+                        break;
+                    }
+                    // A quoted field goes on over the line break
+                    line = mReader.readLine();
+                    if (line == null) {
+                        throw new CsvException("Unterminated quoted field at line " + mLineNumber);
+                    }
+                    mLineNumber++;
+                    mField.append('\n');
+                    i = 0;
+                    continue;
+                }
+
+                char c = line.charAt(i++);
+                if (quoted) {
+                    if (c != '"') {
+                        mField.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        // A doubled quote stands for one quote
+                        mField.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    mFields.add(mField.toString());
+                    mField.setLength(0);
+                } else {
+                    mField.append(c);
+                }
+            }
+            mFields.add(mField.toString());
+            return mFields.toArray(new String[mFields.size()]);
+        }
+    }
+
+    /**
+     * Thrown when a file cannot be read as courses.
+     */
+    static final class CsvException extends IllegalArgumentException {
+
+        CsvException(String message) {
+            super(message);
+        }
+    }
+}
@@ -15,11 +15,16 @@
  */
 package com.miroslav.android.courses.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+import com.miroslav.android.courses.data.CourseContract.SearchEntry;
+import com.miroslav.android.courses.data.CourseContract.SummaryEntry;
 
 /**
  * Database helper for Pets app. Manages database creation and version management.
@@ -35,15 +40,73 @@ public class CourseDbHelper extends SQLiteOpenHelper {
     /**
      * Database version. If you change the database schema, you must increment the database version.
      */
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 4;
 
     /**
-     * Constructs a new instance of {@link CourseDbHelper}.
+     * Upper bound in bytes for the journal file left behind after a checkpoint or transaction.
+     */
+    private static final long JOURNAL_SIZE_LIMIT = 512 * 1024;
+
+    /**
+     * Whether the database is opened in write-ahead logging mode
+     */
+    private final boolean mWriteAheadLogging;
+
+    /**
+     * Constructs a new instance of {@link CourseDbHelper} in write-ahead logging mode.
      *
      * @param context of the app
      */
     public CourseDbHelper(Context context) {
+        this(context, true);
+    }
+
+    /**
+     * Constructs a new instance of {@link CourseDbHelper}.
+     *
+     * @param context           of the app
+     * @param writeAheadLogging true to open the database in write-ahead logging mode, which lets
+     *                          readers run on their own pooled connections alongside a writer,
+     *                          false to keep the default rollback journal. The provider reads it
+     *                          from the database_write_ahead_logging resource. The framework
+     *                          sizes the reader pool itself, there is no public setting for it.
+     */
+    public CourseDbHelper(Context context, boolean writeAheadLogging) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mWriteAheadLogging = writeAheadLogging;
+    }
+
+    /**
+     * This is called when the database connection is being configured, before it is created,
+     * upgraded or opened.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        if (mWriteAheadLogging) {
+            // Lets the framework hand out a pool of read connections next to the write connection
+            db.enableWriteAheadLogging();
+
+            // In WAL mode NORMAL is still safe against corruption, it only skips the fsync per commit
+            db.execSQL("PRAGMA synchronous = NORMAL");
+        }
+
+        // Keep the journal from growing without bound after large imports
+        DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit = " + JOURNAL_SIZE_LIMIT, null);
+    }
+
+    /**
+     * This is called when the database has been opened.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // onConfigure is not called before Jelly Bean, so enable write-ahead logging here instead
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && mWriteAheadLogging && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
     }
 
     /**
@@ -60,6 +123,10 @@ public class CourseDbHelper extends SQLiteOpenHelper {
 
         // Execute the SQL statement
         db.execSQL(SQL_CREATE_PETS_TABLE);
+
+        createSummaryTable(db);
+        createSearchTable(db);
+        createIndexes(db);
     }
 
     /**
@@ -67,7 +134,90 @@ public class CourseDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done here.
+        if (oldVersion < 2) {
+            // Version 2 adds the summary table, seeded from the courses already stored
+            createSummaryTable(db);
+        }
+        if (oldVersion < 3) {
+            // Version 3 adds the full-text index over course names
+            createSearchTable(db);
+        }
+        if (oldVersion < 4) {
+            // Version 4 indexes the columns the catalog sorts and filters by
+            createIndexes(db);
+        }
+    }
+
+    /**
+     * Create the single-row summary table and seed it with the totals of the courses table.
+     */
+    private static void createSummaryTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SummaryEntry.TABLE_NAME + " ("
+                + SummaryEntry._ID + " INTEGER PRIMARY KEY, "
+                + SummaryEntry.COLUMN_COURSE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                + SummaryEntry.COLUMN_GRADE_SUM + " INTEGER NOT NULL DEFAULT 0, "
+                + SummaryEntry.COLUMN_CREDIT_SUM + " INTEGER NOT NULL DEFAULT 0, "
+                + SummaryEntry.COLUMN_WEIGHTED_SUM + " INTEGER NOT NULL DEFAULT 0);");
+
+        db.execSQL("INSERT INTO " + SummaryEntry.TABLE_NAME + " ("
+                + SummaryEntry._ID + ", "
+                + SummaryEntry.COLUMN_COURSE_COUNT + ", "
+                + SummaryEntry.COLUMN_GRADE_SUM + ", "
+                + SummaryEntry.COLUMN_CREDIT_SUM + ", "
+                + SummaryEntry.COLUMN_WEIGHTED_SUM + ") SELECT "
+                + SummaryEntry.SUMMARY_ROW_ID + ", "
+                + "COUNT(*), "
+                + "IFNULL(SUM(" + CoursesEntry.COLUMN_COURSE_GRADE + "), 0), "
+                + "IFNULL(SUM(" + CoursesEntry.COLUMN_COURSE_CREDIT + "), 0), "
+                + "IFNULL(SUM(" + CoursesEntry.COLUMN_COURSE_GRADE + " * "
+                + CoursesEntry.COLUMN_COURSE_CREDIT + "), 0) "
+                + "FROM " + CoursesEntry.TABLE_NAME + ";");
+    }
+
+    /**
+     * Create an index on each column the courses can be sorted or filtered by. The ID is part of
+     * every index entry, so orders that break ties by ID are read straight from the index too.
+     */
+    private static void createIndexes(SQLiteDatabase db) {
+        for (String column : new String[]{CoursesEntry.COLUMN_COURSE_NAME,
+                CoursesEntry.COLUMN_COURSE_CREDIT, CoursesEntry.COLUMN_COURSE_GRADE}) {
+            db.execSQL("CREATE INDEX " + CoursesEntry.TABLE_NAME + "_" + column + "_index ON "
+                    + CoursesEntry.TABLE_NAME + " (" + column + ");");
+        }
+    }
+
+    /**
+     * Create the full-text index over course names, the triggers keeping it in sync with the
+     * courses table, and index the courses already stored.
+     */
+    private static void createSearchTable(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + SearchEntry.TABLE_NAME + " USING fts4("
+                + SearchEntry.COLUMN_COURSE_NAME + ");");
+
+        db.execSQL("CREATE TRIGGER " + SearchEntry.TABLE_NAME + "_insert AFTER INSERT ON "
+                + CoursesEntry.TABLE_NAME + " BEGIN "
+                + "INSERT INTO " + SearchEntry.TABLE_NAME + " ("
+                + SearchEntry.COLUMN_DOCID + ", " + SearchEntry.COLUMN_COURSE_NAME + ") "
+                + "VALUES (new." + CoursesEntry._ID + ", new." + CoursesEntry.COLUMN_COURSE_NAME + "); "
+                + "END;");
+
+        db.execSQL("CREATE TRIGGER " + SearchEntry.TABLE_NAME + "_update AFTER UPDATE OF "
+                + CoursesEntry.COLUMN_COURSE_NAME + " ON " + CoursesEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + SearchEntry.TABLE_NAME + " SET "
+                + SearchEntry.COLUMN_COURSE_NAME + " = new." + CoursesEntry.COLUMN_COURSE_NAME
+                + " WHERE " + SearchEntry.COLUMN_DOCID + " = old." + CoursesEntry._ID + "; "
+                + "END;");
+
+        db.execSQL("CREATE TRIGGER " + SearchEntry.TABLE_NAME + "_delete AFTER DELETE ON "
+                + CoursesEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + SearchEntry.TABLE_NAME
+                + " WHERE " + SearchEntry.COLUMN_DOCID + " = old." + CoursesEntry._ID + "; "
+                + "END;");
+
+        db.execSQL("INSERT INTO " + SearchEntry.TABLE_NAME + " ("
+                + SearchEntry.COLUMN_DOCID + ", " + SearchEntry.COLUMN_COURSE_NAME + ") "
+                + "SELECT " + CoursesEntry._ID + ", " + CoursesEntry.COLUMN_COURSE_NAME
+                + " FROM " + CoursesEntry.TABLE_NAME + ";");
     }
 
 }
\ No newline at end of file
@@ -15,17 +15,59 @@
  */
 package com.miroslav.android.courses.data;
 
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.miroslav.android.courses.R;
 import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+import com.miroslav.android.courses.data.CourseContract.SearchEntry;
+import com.miroslav.android.courses.data.CourseContract.SummaryEntry;
+import com.miroslav.android.courses.grading.CourseRules;
+import com.miroslav.android.courses.grading.GradeTotals;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * {@link ContentProvider} for Courses app.
@@ -47,6 +89,27 @@ public class CourseProvider extends ContentProvider {
      */
     private static final int COURSE_ID = 101;
 
+    /**
+     * URI matcher code for the content URI for the course summary
+     */
+    private static final int SUMMARY = 102;
+
+    /**
+     * URI matcher code for the content URI for searching courses by name
+     */
+    private static final int SEARCH = 103;
+
+    /**
+     * URI matcher code for the content URI for exporting and importing courses as CSV
+     */
+    private static final int CSV = 104;
+
+    /**
+     * Names of the URIs in the metrics, in the order of their URI matcher codes
+     */
+    private static final String[] METRICS_URI_NAMES = {
+            "courses", "course_id", "summary", "search", "csv"};
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -73,39 +136,541 @@ public class CourseProvider extends ContentProvider {
         // For miroslav, "content://com.miroslav.android.courses/courses/3" matches, but
         // "content://com.miroslav.android.courses/courses" (without a number at the end) doesn't match.
         sUriMatcher.addURI(CourseContract.CONTENT_AUTHORITY, CourseContract.PATH_COURSES + "/#", COURSE_ID);
+
+        // The content URI of the form "content://com.miroslav.android.courses/courses/summary" will map
+        // to the integer code {@link #SUMMARY}. This URI is used to read the running totals.
+        sUriMatcher.addURI(CourseContract.CONTENT_AUTHORITY,
+                CourseContract.PATH_COURSES + "/" + CourseContract.PATH_SUMMARY, SUMMARY);
+
+        // The content URI of the form "content://com.miroslav.android.courses/courses/search/..." will
+        // map to the integer code {@link #SEARCH}. The last path segment is the search text.
+        sUriMatcher.addURI(CourseContract.CONTENT_AUTHORITY,
+                CourseContract.PATH_COURSES + "/" + CourseContract.PATH_SEARCH + "/*", SEARCH);
+
+        // The content URI of the form "content://com.miroslav.android.courses/courses/csv" will map
+        // to the integer code {@link #CSV}. It is only opened as a file, see openFile().
+        sUriMatcher.addURI(CourseContract.CONTENT_AUTHORITY,
+                CourseContract.PATH_COURSES + "/" + CourseContract.PATH_CSV, CSV);
     }
 
+    /**
+     * Columns that can be requested from the {@link #SUMMARY} URI, mapped to the SQL producing them.
+     */
+    private static final HashMap<String, String> sSummaryProjectionMap = new HashMap<>();
+
+    static {
+        sSummaryProjectionMap.put(SummaryEntry._ID, SummaryEntry._ID);
+        sSummaryProjectionMap.put(SummaryEntry.COLUMN_COURSE_COUNT, SummaryEntry.COLUMN_COURSE_COUNT);
+        sSummaryProjectionMap.put(SummaryEntry.COLUMN_GRADE_SUM, SummaryEntry.COLUMN_GRADE_SUM);
+        sSummaryProjectionMap.put(SummaryEntry.COLUMN_CREDIT_SUM, SummaryEntry.COLUMN_CREDIT_SUM);
+        sSummaryProjectionMap.put(SummaryEntry.COLUMN_WEIGHTED_SUM, SummaryEntry.COLUMN_WEIGHTED_SUM);
+        // Dividing by a count of 0 yields NULL, just like AVG over an empty table
+        sSummaryProjectionMap.put(SummaryEntry.COLUMN_AVERAGE_GRADE,
+                "CAST(" + SummaryEntry.COLUMN_GRADE_SUM + " AS REAL) / " + SummaryEntry.COLUMN_COURSE_COUNT
+                        + " AS " + SummaryEntry.COLUMN_AVERAGE_GRADE);
+        // The credit sum is 0 exactly when there are no courses, as every course has credits
+        sSummaryProjectionMap.put(SummaryEntry.COLUMN_WEIGHTED_AVERAGE_GRADE,
+                "CAST(" + SummaryEntry.COLUMN_WEIGHTED_SUM + " AS REAL) / " + SummaryEntry.COLUMN_CREDIT_SUM
+                        + " AS " + SummaryEntry.COLUMN_WEIGHTED_AVERAGE_GRADE);
+    }
+
+    /**
+     * Columns that can be requested from the {@link #SEARCH} URI, qualified with the courses table
+     * because the full-text table has a name column too.
+     */
+    private static final HashMap<String, String> sSearchProjectionMap = new HashMap<>();
+
+    static {
+        for (String column : new String[]{CoursesEntry._ID, CoursesEntry.COLUMN_COURSE_NAME,
+                CoursesEntry.COLUMN_COURSE_CREDIT, CoursesEntry.COLUMN_COURSE_GRADE}) {
+            sSearchProjectionMap.put(column, CoursesEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+    }
+
+    /**
+     * Columns that pages of courses can be ordered by
+     */
+    private static final Set<String> sSortColumns = new HashSet<>(Arrays.asList(
+            CoursesEntry._ID,
+            CoursesEntry.COLUMN_COURSE_NAME,
+            CoursesEntry.COLUMN_COURSE_CREDIT,
+            CoursesEntry.COLUMN_COURSE_GRADE));
+
+    /**
+     * Largest number of courses kept in memory by the course cache. The copy lives as long as the
+     * provider, so the limit bounds that memory to a few hundred KiB; larger tables are read from
+     * SQLite and do not use {@link CourseArrayCursor}.
+     */
+    private static final int CACHE_MAX_ROWS = 5000;
+
+    /**
+     * Largest number of rows held by the result cache over all results, and in a single result
+     */
+    private static final int RESULT_CACHE_MAX_ROWS = 10000;
+    private static final int RESULT_CACHE_MAX_RESULT_ROWS = 1000;
+
+    /**
+     * Courses read from the database per query during an export. Paging by ID keeps the export
+     * linear in the number of courses, where one cursor over the whole table would refill its
+     * window by stepping over all rows before it.
+     */
+    private static final int EXPORT_PAGE_ROWS = 1000;
+
+    /**
+     * Courses parsed before they are inserted together during an import
+     */
+    private static final int IMPORT_CHUNK_ROWS = 500;
+
+    /**
+     * Size in characters of the buffers between the CSV pipes and the parser or formatter
+     */
+    private static final int CSV_BUFFER_SIZE = 16 * 1024;
+
+    private static final Charset CSV_CHARSET = Charset.forName("UTF-8");
+
     /**
      * Database helper object
      */
     private CourseDbHelper mDbHelper;
 
+    /**
+     * In-memory copy of the courses table, or null if caching is disabled
+     */
+    private CourseCache mCache;
+
+    /**
+     * Recent query results, dropped after every committed write
+     */
+    private final QueryResultCache mResultCache =
+            new QueryResultCache(RESULT_CACHE_MAX_ROWS, RESULT_CACHE_MAX_RESULT_ROWS);
+
+    /**
+     * Whether queries are answered from {@link #mResultCache}
+     */
+    private boolean mResultCacheEnabled = true;
+
+    /**
+     * Latency and throughput counters, see {@link CourseContract#METHOD_GET_METRICS}
+     */
+    private final ProviderMetrics mMetrics = new ProviderMetrics(METRICS_URI_NAMES);
+
+    /**
+     * State of the last CSV import, see {@link CourseContract#METHOD_GET_IMPORT_STATUS}. Null
+     * until the first import starts.
+     */
+    private volatile Bundle mImportStatus;
+
+    /**
+     * Sends the change notifications of committed writes
+     */
+    private NotificationCoalescer mNotifier;
+
+    /**
+     * URIs changed by the batch running on the current thread, or null outside of a batch.
+     * Notifications for these are held back until the batch has been committed.
+     */
+    private final ThreadLocal<Set<Uri>> mBatchNotifications = new ThreadLocal<>();
+
     @Override
     public boolean onCreate() {
-        mDbHelper = new CourseDbHelper(getContext());
+        //noinspection ConstantConditions
+        mDbHelper = new CourseDbHelper(getContext(),
+                getContext().getResources().getBoolean(R.bool.database_write_ahead_logging));
+        if (getContext().getResources().getBoolean(R.bool.course_cache_enabled)) {
+            mCache = new CourseCache(CACHE_MAX_ROWS);
+        }
+        mNotifier = new NotificationCoalescer(getContext().getContentResolver(), mMetrics,
+                getContext().getResources().getInteger(R.integer.notification_window_millis));
         return true;
     }
 
+    /**
+     * Answer every query from the database, without the course cache or the result cache. Used by
+     * the load test to time the database paths, which repeated reads would otherwise skip. Call
+     * before the provider is used.
+     */
+    void disableCaches() {
+        mCache = null;
+        mResultCacheEnabled = false;
+    }
+
+    /**
+     * Apply all operations in a single transaction, so the batch either succeeds as a whole or
+     * leaves the database untouched. Listeners are notified once per changed URI after commit,
+     * together with any changes still waiting for the end of their notification window.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = System.nanoTime();
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        Set<Uri> changedUris = new HashSet<>();
+        ContentProviderResult[] results = null;
+
+        mBatchNotifications.set(changedUris);
+        beginTransaction(database);
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mBatchNotifications.remove();
+
+            // The operations were not recorded in the cache one by one, see isCacheTracking()
+            if (mCache != null) {
+                mCache.invalidate();
+            }
+
+            // The operations are recorded one by one too, the batch as a whole under courses
+            mMetrics.record(ProviderMetrics.OPERATION_APPLY_BATCH, getMetricsSlot(COURSES), start,
+                    results != null ? results.length : 0);
+        }
+
+        for (Uri uri : changedUris) {
+            notifyChange(uri);
+        }
+        mNotifier.flush();
+        return results;
+    }
+
+    /**
+     * Notify all listeners that the data at the given URI has changed. Inside a batch the
+     * notification is deferred until the batch has been committed, otherwise it is sent at the
+     * end of the current notification window.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> changedUris = mBatchNotifications.get();
+        if (changedUris != null) {
+            changedUris.add(uri);
+            return;
+        }
+
+        // Every write notifies once it is committed, so this is where cached results go stale.
+        // The generation has to move before listeners reload.
+        mResultCache.onDataChanged();
+
+        mNotifier.add(uri);
+    }
+
+    /**
+     * Begin a transaction on the given database, counting it in the metrics.
+     */
+    private void beginTransaction(SQLiteDatabase database) {
+        mMetrics.countTransaction();
+        database.beginTransaction();
+    }
+
+    /**
+     * Return the slot the metrics of the given URI matcher code are recorded under.
+     */
+    private static int getMetricsSlot(int match) {
+        return match - COURSES;
+    }
+
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        switch (method) {
+            case CourseContract.METHOD_GET_AGGREGATES:
+                return getAggregates();
+            case CourseContract.METHOD_GET_DIAGNOSTICS:
+                return getDiagnostics();
+            case CourseContract.METHOD_GET_METRICS:
+                return mMetrics.toBundle();
+            case CourseContract.METHOD_RESET_METRICS:
+                mMetrics.reset();
+                return null;
+            case CourseContract.METHOD_WRITE_SNAPSHOT:
+                return writeSnapshot(getSnapshotFile(arg));
+            case CourseContract.METHOD_RESTORE_SNAPSHOT:
+                return restoreSnapshot(getSnapshotFile(arg));
+            case CourseContract.METHOD_GET_IMPORT_STATUS:
+                return mImportStatus;
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    /**
+     * Return the totals over all courses, see {@link CourseContract#METHOD_GET_AGGREGATES}. They
+     * come from the course cache when it already holds the courses, and from the summary table
+     * otherwise, so a cold cache never loads the whole table just for the totals.
+     */
+    private Bundle getAggregates() {
+        long start = System.nanoTime();
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+
+        GradeTotals grades = mCache != null ? mCache.getTotals() : null;
+        if (grades == null) {
+            grades = querySummaryTotals(database);
+        }
+        mMetrics.record(ProviderMetrics.OPERATION_AGGREGATES, getMetricsSlot(SUMMARY), start, 1);
+
+        Bundle aggregates = new Bundle();
+        aggregates.putLong(CourseContract.AGGREGATE_COURSE_COUNT, grades.getCount());
+        aggregates.putLong(CourseContract.AGGREGATE_GRADE_SUM, grades.getGradeSum());
+        aggregates.putLong(CourseContract.AGGREGATE_CREDIT_SUM, grades.getCreditSum());
+        aggregates.putLong(CourseContract.AGGREGATE_WEIGHTED_SUM, grades.getWeightedSum());
+        if (grades.getCount() > 0) {
+            aggregates.putDouble(CourseContract.AGGREGATE_AVERAGE_GRADE, grades.getAverageGrade());
+            aggregates.putDouble(CourseContract.AGGREGATE_WEIGHTED_AVERAGE_GRADE,
+                    grades.getWeightedAverageGrade());
+        }
+        return aggregates;
+    }
+
+    /**
+     * Return the totals over all courses from the summary table.
+     */
+    private static GradeTotals querySummaryTotals(SQLiteDatabase database) {
+        String[] projection = {
+                SummaryEntry.COLUMN_COURSE_COUNT,
+                SummaryEntry.COLUMN_GRADE_SUM,
+                SummaryEntry.COLUMN_CREDIT_SUM,
+                SummaryEntry.COLUMN_WEIGHTED_SUM};
+
+        Cursor cursor = database.query(SummaryEntry.TABLE_NAME, projection,
+                SummaryEntry._ID + "=" + SummaryEntry.SUMMARY_ROW_ID, null, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return new GradeTotals(cursor.getLong(0), cursor.getLong(1), cursor.getLong(2),
+                    cursor.getLong(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Write all courses to a snapshot in the given file, see
+     * {@link CourseContract#METHOD_WRITE_SNAPSHOT}.
+     */
+    private Bundle writeSnapshot(File file) {
+        long start = System.nanoTime();
+        int rows = 0;
+
+        // Both passes over the courses run in one transaction of the provider's connection, so
+        // they see the same courses. An immediate transaction takes the write lock without the
+        // exclusive lock: readers keep going next to it, writers wait until the snapshot is
+        // written, with or without write-ahead logging. Below API 35 the framework has no deferred
+        // transaction, which would let writers go on.
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        mMetrics.countTransaction();
+        database.beginTransactionNonExclusive();
+        try {
+            rows = CourseSnapshot.write(database, file);
+            database.setTransactionSuccessful();
+        } catch (IOException | SQLException e) {
+            throw new IllegalArgumentException("Failed to write snapshot to " + file, e);
+        } finally {
+            database.endTransaction();
+            mMetrics.record(ProviderMetrics.OPERATION_WRITE_SNAPSHOT, getMetricsSlot(COURSES),
+                    start, rows);
+        }
+
+        logThroughput("Wrote snapshot of", rows, start);
+        return getSnapshotResult(rows, file);
+    }
+
+    /**
+     * Replace all courses with those of the snapshot in the given file within one transaction,
+     * see {@link CourseContract#METHOD_RESTORE_SNAPSHOT}.
+     */
+    private Bundle restoreSnapshot(File file) {
+        long start = System.nanoTime();
+        int rows = 0;
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        beginTransaction(database);
+        try {
+            GradeTotals oldTotals = querySummaryTotals(database);
+            GradeTotals newTotals = CourseSnapshot.restore(file, database);
+            applySummaryDelta(database, oldTotals, newTotals);
+            database.setTransactionSuccessful();
+            rows = (int) newTotals.getCount();
+        } catch (IOException | SQLException e) {
+            throw new IllegalArgumentException("Failed to restore snapshot from " + file, e);
+        } finally {
+            database.endTransaction();
+            if (mCache != null) {
+                mCache.invalidate();
+            }
+            mMetrics.record(ProviderMetrics.OPERATION_RESTORE_SNAPSHOT, getMetricsSlot(COURSES),
+                    start, rows);
+        }
+
+        logThroughput("Restored snapshot of", rows, start);
+        notifyChange(CoursesEntry.CONTENT_URI);
+        return getSnapshotResult(rows, file);
+    }
+
+    private static File getSnapshotFile(String path) {
+        if (path == null || !new File(path).isAbsolute()) {
+            throw new IllegalArgumentException("Snapshot requires an absolute path, got " + path);
+        }
+        return new File(path);
+    }
+
+    private static Bundle getSnapshotResult(int rows, File file) {
+        Bundle result = new Bundle();
+        result.putLong(CourseContract.SNAPSHOT_COURSES, rows);
+        result.putLong(CourseContract.SNAPSHOT_BYTES, file.length());
+        return result;
+    }
+
+    /**
+     * Return the counters of the caches, see {@link CourseContract#METHOD_GET_DIAGNOSTICS}.
+     */
+    private Bundle getDiagnostics() {
+        Bundle diagnostics = new Bundle();
+
+        long hits = mResultCache.getHitCount();
+        long misses = mResultCache.getMissCount();
+        diagnostics.putLong(CourseContract.DIAGNOSTICS_RESULT_CACHE_HITS, hits);
+        diagnostics.putLong(CourseContract.DIAGNOSTICS_RESULT_CACHE_MISSES, misses);
+        diagnostics.putDouble(CourseContract.DIAGNOSTICS_RESULT_CACHE_HIT_RATIO, getRatio(hits, misses));
+        diagnostics.putInt(CourseContract.DIAGNOSTICS_RESULT_CACHE_EVICTIONS,
+                mResultCache.getEvictionCount());
+        diagnostics.putInt(CourseContract.DIAGNOSTICS_RESULT_CACHE_SIZE, mResultCache.getResultCount());
+        diagnostics.putLong(CourseContract.DIAGNOSTICS_WRITE_GENERATION, mResultCache.getGeneration());
+
+        if (mCache != null) {
+            hits = mCache.getHitCount();
+            misses = mCache.getMissCount();
+            diagnostics.putLong(CourseContract.DIAGNOSTICS_COURSE_CACHE_HITS, hits);
+            diagnostics.putLong(CourseContract.DIAGNOSTICS_COURSE_CACHE_MISSES, misses);
+            diagnostics.putDouble(CourseContract.DIAGNOSTICS_COURSE_CACHE_HIT_RATIO,
+                    getRatio(hits, misses));
+        }
+        return diagnostics;
+    }
+
+    /**
+     * Return the share of hits among all lookups, or 0 if there were none.
+     */
+    private static double getRatio(long hits, long misses) {
+        return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+    }
+
+    /**
+     * Return whether the current thread uses the course cache, reading from it and recording its
+     * committed writes in it. Inside a batch a rolled back transaction would leave the cache ahead
+     * of the database, so batches neither read nor record and invalidate the cache once they end.
+     * <p>
+     * A recorded write holds the cache from before its transaction begins until it is recorded,
+     * so the cache sees writes in commit order. The cache is always locked before the database,
+     * as a read that loads the table does, which a batch holding the database for its whole run
+     * could not do.
+     */
+    private boolean isCacheTracking() {
+        return mCache != null && mBatchNotifications.get() == null;
+    }
+
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Query the given URI, stopping the database query as soon as the given signal is cancelled,
+     * e.g. by a loader whose result was superseded. Called with a signal from API 16 on.
+     */
+    @SuppressLint("NewApi")
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        long start = System.nanoTime();
+
+        // Figure out if the URI matcher can match the URI to a specific code
+        int match = sUriMatcher.match(uri);
+
+        Cursor cursor = null;
+        int rows = 0;
+        try {
+            cursor = queryUri(match, uri, projection, selection, selectionArgs, sortOrder,
+                    cancellationSignal);
+            // Counting the rows fills the window of a database cursor now instead of on first
+            // access, which is part of the cost of the query anyway
+            rows = cursor.getCount();
+            return cursor;
+        } catch (RuntimeException e) {
+            if (cursor != null) {
+                cursor.close();
+            }
+            // Checked this way because OperationCanceledException does not exist before API 16
+            if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                mMetrics.countCancelledQuery();
+            }
+            throw e;
+        } finally {
+            mMetrics.record(ProviderMetrics.OPERATION_QUERY, getMetricsSlot(match), start, rows);
+        }
+    }
+
+    /**
+     * Query the given URI, which the URI matcher matched to the given code.
+     */
+    private Cursor queryUri(int match, Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder,
+                            CancellationSignal cancellationSignal) {
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query
         Cursor cursor;
 
-        // Figure out if the URI matcher can match the URI to a specific code
-        int match = sUriMatcher.match(uri);
+        // Repeated queries are answered from the caches, except inside a batch where they could
+        // see writes that are rolled back later
+        boolean useCourseCache = isCacheTracking();
+        QueryResultCache.Key key = null;
+        long generation = 0;
+        if (mResultCacheEnabled && match != UriMatcher.NO_MATCH
+                && mBatchNotifications.get() == null) {
+            key = new QueryResultCache.Key(match, uri.toString(), projection, selection,
+                    selectionArgs, sortOrder);
+            cursor = mResultCache.get(key);
+            if (cursor != null) {
+                //noinspection ConstantConditions
+                cursor.setNotificationUri(getContext().getContentResolver(), getNotificationUri(match, uri));
+                return cursor;
+            }
+            generation = mResultCache.getGeneration();
+        }
+
         switch (match) {
             case COURSES:
+                // A limit turns the query into a request for a single page of courses
+                if (uri.getQueryParameter(CoursesEntry.QUERY_PARAMETER_LIMIT) != null) {
+                    cursor = queryCoursePage(database, uri, projection, selection, selectionArgs,
+                            cancellationSignal);
+                    break;
+                }
+
+                // Unfiltered reads in ID order are answered from memory when possible
+                cursor = null;
+                if (useCourseCache && selection == null
+                        && (sortOrder == null || sortOrder.equals(CoursesEntry._ID))) {
+                    cursor = mCache.queryCourses(database, projection);
+                }
+                if (cursor != null) {
+                    break;
+                }
+
                 // For the COURSES code, query the courses table directly with the given
                 // projection, selection, selection arguments, and sort order. The cursor
                 // could contain multiple rows of the courses table.
-                cursor = database.query(CoursesEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                cursor = queryCourseTable(database, projection, selection, selectionArgs,
+                        sortOrder, null, cancellationSignal);
                 break;
             case COURSE_ID:
+                if (useCourseCache && selection == null && sortOrder == null) {
+                    cursor = mCache.queryCourse(database, ContentUris.parseId(uri), projection);
+                    if (cursor != null) {
+                        break;
+                    }
+                }
+
                 // For the COURSE_ID code, extract out the ID from the URI.
                 // For an miroslav URI such as "content://com.miroslav.android.courses/courses/3",
                 // the selection will be "_id=?" and the selection argument will be a
@@ -119,92 +684,440 @@ public class CourseProvider extends ContentProvider {
 
                 // This will perform a query on the courses table where the _id equals 3 to return a
                 // Cursor containing that row of the table.
-                cursor = database.query(CoursesEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                cursor = queryCourseTable(database, projection, selection, selectionArgs,
+                        sortOrder, null, cancellationSignal);
+                break;
+            case SEARCH:
+                cursor = searchCourses(database, uri.getLastPathSegment(), projection, selection,
+                        selectionArgs, sortOrder, cancellationSignal);
+                break;
+            case SUMMARY:
+                // For the SUMMARY code, read the single row of running totals. The average is
+                // derived from the totals, so no query ever has to aggregate the courses table.
+                cursor = null;
+                if (useCourseCache && selection == null) {
+                    cursor = mCache.querySummary(projection);
+                }
+                if (cursor != null) {
+                    break;
+                }
+
+                SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(SummaryEntry.TABLE_NAME);
+                builder.setProjectionMap(sSummaryProjectionMap);
+                builder.appendWhere(SummaryEntry._ID + "=" + SummaryEntry.SUMMARY_ROW_ID);
+                cursor = runQuery(builder, database, projection, selection, selectionArgs,
+                        sortOrder, null, cancellationSignal);
                 break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
 
+        // Results read from the database are copied into the result cache. Those of the course
+        // cache are in memory already.
+        if (key != null && cursor instanceof SQLiteCursor) {
+            cursor = mResultCache.put(key, generation, cursor);
+        }
+
         // Set notification URI on the Cursor,
         // so we know what content URI the Cursor was created for.
         // If the data at this URI changes, then we know we need to update the Cursor.
         //noinspection ConstantConditions
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), getNotificationUri(match, uri));
 
         // Return the cursor
         return cursor;
     }
 
+    /**
+     * Return the URI whose changes affect the result of a query of the given URI.
+     */
+    private static Uri getNotificationUri(int match, Uri uri) {
+        // Search results and the totals change whenever any course does, so watch the courses URI
+        return match == SEARCH || match == SUMMARY ? CoursesEntry.CONTENT_URI : uri;
+    }
+
+    /**
+     * Query the courses with a word in their name starting with each word of the given search
+     * text, through the full-text index. Unless another sort order is given, courses whose name
+     * starts with the search text come first, then shorter names before longer ones.
+     */
+    private Cursor searchCourses(SQLiteDatabase database, String query, String[] projection,
+                                 String selection, String[] selectionArgs, String sortOrder,
+                                 CancellationSignal cancellationSignal) {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(CoursesEntry.TABLE_NAME + " JOIN " + SearchEntry.TABLE_NAME + " ON "
+                + CoursesEntry.TABLE_NAME + "." + CoursesEntry._ID + " = "
+                + SearchEntry.TABLE_NAME + "." + SearchEntry.COLUMN_DOCID);
+        builder.setProjectionMap(sSearchProjectionMap);
+
+        String matchQuery = buildMatchQuery(query);
+        if (matchQuery == null) {
+            // There is no word to search for, so nothing matches
+            builder.appendWhere("0");
+        } else {
+            builder.appendWhere(SearchEntry.TABLE_NAME + " MATCH ");
+            builder.appendWhereEscapeString(matchQuery);
+        }
+
+        if (sortOrder == null) {
+            String nameColumn = CoursesEntry.TABLE_NAME + "." + CoursesEntry.COLUMN_COURSE_NAME;
+            // The search text is matched literally, so its own wildcards are escaped
+            String prefix = query.trim().replace("\\", "\\\\").replace("%", "\\%")
+                    .replace("_", "\\_");
+            sortOrder = "CASE WHEN " + nameColumn + " LIKE "
+                    + DatabaseUtils.sqlEscapeString(prefix + "%") + " ESCAPE '\\' "
+                    + "THEN 0 ELSE 1 END, "
+                    + "LENGTH(" + nameColumn + "), " + nameColumn;
+        }
+
+        return runQuery(builder, database, projection, selection, selectionArgs, sortOrder, null,
+                cancellationSignal);
+    }
+
+    /**
+     * Query the courses table, see {@link #runQuery}.
+     */
+    private static Cursor queryCourseTable(SQLiteDatabase database, String[] projection,
+                                           String selection, String[] selectionArgs,
+                                           String sortOrder, String limit,
+                                           CancellationSignal cancellationSignal) {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(CoursesEntry.TABLE_NAME);
+        return runQuery(builder, database, projection, selection, selectionArgs, sortOrder, limit,
+                cancellationSignal);
+    }
+
+    /**
+     * Run the query of the given builder, stopping it as soon as the given signal is cancelled.
+     * The signal is only ever passed in from API 16 on, and is null before.
+     */
+    @SuppressLint("NewApi")
+    private static Cursor runQuery(SQLiteQueryBuilder builder, SQLiteDatabase database,
+                                   String[] projection, String selection, String[] selectionArgs,
+                                   String sortOrder, String limit,
+                                   CancellationSignal cancellationSignal) {
+        if (cancellationSignal == null) {
+            return builder.query(database, projection, selection, selectionArgs, null, null,
+                    sortOrder, limit);
+        }
+        return builder.query(database, projection, selection, selectionArgs, null, null,
+                sortOrder, limit, cancellationSignal);
+    }
+
+    /**
+     * Turn the given search text into a full-text query matching every word as a prefix, e.g.
+     * "lin alg" becomes "lin*" "alg*". Return null if the text contains no words.
+     */
+    private static String buildMatchQuery(String query) {
+        StringBuilder matchQuery = new StringBuilder();
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (matchQuery.length() > 0) {
+                matchQuery.append(' ');
+            }
+            matchQuery.append('"').append(word).append("*\"");
+        }
+        return matchQuery.length() > 0 ? matchQuery.toString() : null;
+    }
+
+    /**
+     * Query one page of courses as described by the paging parameters of the given URI. Pages
+     * are located by the key of the neighbouring course (keyset pagination) instead of an offset,
+     * so every page is read straight from its starting row no matter how deep into the table it is.
+     */
+    private Cursor queryCoursePage(SQLiteDatabase database, Uri uri, String[] projection,
+                                   String selection, String[] selectionArgs,
+                                   CancellationSignal cancellationSignal) {
+        String limit = uri.getQueryParameter(CoursesEntry.QUERY_PARAMETER_LIMIT);
+        if (limit.isEmpty() || !TextUtils.isDigitsOnly(limit)) {
+            throw new IllegalArgumentException("Invalid page limit in " + uri);
+        }
+
+        String sortColumn = uri.getQueryParameter(CoursesEntry.QUERY_PARAMETER_SORT);
+        if (sortColumn == null) {
+            sortColumn = CoursesEntry._ID;
+        } else if (!sSortColumns.contains(sortColumn)) {
+            throw new IllegalArgumentException("Cannot sort pages by " + sortColumn);
+        }
+
+        StringBuilder where = new StringBuilder();
+        ArrayList<String> whereArgs = new ArrayList<>();
+        if (selection != null) {
+            where.append('(').append(selection).append(')');
+            if (selectionArgs != null) {
+                whereArgs.addAll(Arrays.asList(selectionArgs));
+            }
+        }
+
+        // Pages before a course are read backwards from it, so the rows closest to it come first
+        String direction = " ASC";
+        String afterId = uri.getQueryParameter(CoursesEntry.QUERY_PARAMETER_AFTER_ID);
+        String beforeId = uri.getQueryParameter(CoursesEntry.QUERY_PARAMETER_BEFORE_ID);
+        if (afterId != null) {
+            appendKeyset(where, whereArgs, sortColumn, ">",
+                    uri.getQueryParameter(CoursesEntry.QUERY_PARAMETER_AFTER), afterId);
+        } else if (beforeId != null) {
+            appendKeyset(where, whereArgs, sortColumn, "<",
+                    uri.getQueryParameter(CoursesEntry.QUERY_PARAMETER_BEFORE), beforeId);
+            direction = " DESC";
+        }
+
+        // The ID breaks ties between courses with the same sort value
+        String orderBy = CoursesEntry._ID + direction;
+        if (!sortColumn.equals(CoursesEntry._ID)) {
+            orderBy = sortColumn + direction + ", " + orderBy;
+        }
+
+        return queryCourseTable(database, projection,
+                where.length() > 0 ? where.toString() : null,
+                whereArgs.toArray(new String[whereArgs.size()]),
+                orderBy, limit, cancellationSignal);
+    }
+
+    /**
+     * Append the condition selecting the courses that sort after (operator "&gt;") or before
+     * (operator "&lt;") the course with the given sort value and ID.
+     */
+    private static void appendKeyset(StringBuilder where, ArrayList<String> whereArgs,
+                                     String sortColumn, String operator, String value, String id) {
+        if (where.length() > 0) {
+            where.append(" AND ");
+        }
+
+        if (sortColumn.equals(CoursesEntry._ID)) {
+            where.append(CoursesEntry._ID).append(' ').append(operator).append(" ?");
+            whereArgs.add(id);
+            return;
+        }
+
+        if (value == null) {
+            throw new IllegalArgumentException("Paging by " + sortColumn + " requires a key value");
+        }
+        where.append("(").append(sortColumn).append(' ').append(operator).append(" ? OR (")
+                .append(sortColumn).append(" = ? AND ")
+                .append(CoursesEntry._ID).append(' ').append(operator).append(" ?))");
+        whereArgs.add(value);
+        whereArgs.add(value);
+        whereArgs.add(id);
+    }
+
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues contentValues) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case COURSES:
-                return insertCourse(uri, contentValues);
-            default:
-                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        Uri newUri = null;
+        try {
+            switch (match) {
+                case COURSES:
+                    if (isCacheTracking()) {
+                        synchronized (mCache) {
+                            newUri = insertCourse(uri, contentValues);
+                        }
+                    } else {
+                        newUri = insertCourse(uri, contentValues);
+                    }
+                    return newUri;
+                default:
+                    throw new IllegalArgumentException("Insertion is not supported for " + uri);
+            }
+        } finally {
+            mMetrics.record(ProviderMetrics.OPERATION_INSERT, getMetricsSlot(match), start,
+                    newUri != null ? 1 : 0);
         }
     }
 
+    /**
+     * Check that the given content values describe a complete, valid course.
+     */
+    private static void validateCourse(ContentValues values) {
+        CourseRules.checkName(values.getAsString(CoursesEntry.COLUMN_COURSE_NAME));
+        CourseRules.checkCredit(values.getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT));
+        CourseRules.checkGrade(values.getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE));
+    }
+
     /**
      * Insert a course into the database with the given content values. Return the new content URI
      * for that specific row in the database.
      */
     private Uri insertCourse(Uri uri, ContentValues values) {
-        // Check that the name is not null
-        String name = values.getAsString(CoursesEntry.COLUMN_COURSE_NAME);
-        if (name == null) {
-            throw new IllegalArgumentException("Course requires a name");
+        validateCourse(values);
+        int credit = values.getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT);
+        int grade = values.getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE);
+
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Insert the new course and account for it in the summary table within one transaction,
+        // so the running totals never disagree with the courses table
+        long id;
+        beginTransaction(database);
+        try {
+            // Insert the new course with the given values
+            id = database.insert(CoursesEntry.TABLE_NAME, null, values);
+            // If the ID is -1, then the insertion failed. Log an error and return null.
+            if (id == -1) {
+                Log.e(LOG_TAG, "Failed to insert row for " + uri);
+                return null;
+            }
+
+            applySummaryDelta(database, 1, grade, credit, grade * credit);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
 
-        // Check that the gender is valid
-        Integer credit = values.getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT);
-        if (credit == null || !CoursesEntry.isValid(credit, 1, 15)) {
-            throw new IllegalArgumentException("Course requires valid credit");
+        if (isCacheTracking()) {
+            mCache.onInsert(id, values.getAsString(CoursesEntry.COLUMN_COURSE_NAME), credit, grade);
         }
 
-        Integer grade = values.getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE);
-        if (grade == null || !CoursesEntry.isValid(grade, 6, 10)) {
-            throw new IllegalArgumentException("Course requires valid grade");
+        // The new URI with the ID (of the newly inserted row) appended at the end
+        Uri newUri = ContentUris.withAppendedId(uri, id);
+
+        // Notify all listeners that the data has changed for the new course. Listeners of the
+        // course content URI are notified too, as it is the parent URI.
+        notifyChange(newUri);
+
+        return newUri;
+    }
+
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        long start = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
+        int rowsInserted = 0;
+        try {
+            switch (match) {
+                case COURSES:
+                    if (isCacheTracking()) {
+                        synchronized (mCache) {
+                            rowsInserted = bulkInsertCourses(uri, values);
+                        }
+                    } else {
+                        rowsInserted = bulkInsertCourses(uri, values);
+                    }
+                    // A bulk insert is already a burst of its own, so like a batch it notifies as
+                    // soon as it is committed instead of waiting for the window to end
+                    mNotifier.flush();
+                    return rowsInserted;
+                default:
+                    throw new IllegalArgumentException("Insertion is not supported for " + uri);
+            }
+        } finally {
+            mMetrics.record(ProviderMetrics.OPERATION_BULK_INSERT, getMetricsSlot(match), start,
+                    rowsInserted);
+        }
+    }
+
+    /**
+     * Insert all given courses in a single transaction. Every row is validated before anything is
+     * written, so either all courses are inserted or none are. Only the name, credit and grade
+     * columns are taken from the content values. Return the number of inserted rows.
+     */
+    private int bulkInsertCourses(Uri uri, ContentValues[] values) {
+        for (ContentValues course : values) {
+            validateCourse(course);
         }
 
+        if (values.length == 0) {
+            return 0;
+        }
 
         // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Insert the new course with the given values
-        long id = database.insert(CoursesEntry.TABLE_NAME, null, values);
-        // If the ID is -1, then the insertion failed. Log an error and return null.
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
+        GradeTotals totals = new GradeTotals();
+        long[] ids = new long[values.length];
+
+        beginTransaction(database);
+        // One compiled statement is reused for every row instead of building the SQL per insert
+        SQLiteStatement statement = database.compileStatement("INSERT INTO " + CoursesEntry.TABLE_NAME
+                + " (" + CoursesEntry.COLUMN_COURSE_NAME + ", "
+                + CoursesEntry.COLUMN_COURSE_CREDIT + ", "
+                + CoursesEntry.COLUMN_COURSE_GRADE + ") VALUES (?, ?, ?)");
+        try {
+            for (int i = 0; i < values.length; i++) {
+                ContentValues course = values[i];
+                int credit = course.getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT);
+                int grade = course.getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE);
+
+                statement.bindString(1, course.getAsString(CoursesEntry.COLUMN_COURSE_NAME));
+                statement.bindLong(2, credit);
+                statement.bindLong(3, grade);
+                ids[i] = statement.executeInsert();
+                if (ids[i] == -1) {
+                    // Abort the whole batch, the transaction is rolled back below
+                    throw new SQLException("Failed to insert row for " + uri);
+                }
+
+                totals.add(credit, grade);
+            }
+
+            applySummaryDelta(database, totals.getCount(), totals.getGradeSum(),
+                    totals.getCreditSum(), totals.getWeightedSum());
+            database.setTransactionSuccessful();
+        } finally {
+            statement.close();
+            database.endTransaction();
         }
 
-        // Notify all listeners that the data has changed for the course content URI
-        //noinspection ConstantConditions
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (isCacheTracking()) {
+            for (int i = 0; i < values.length; i++) {
+                mCache.onInsert(ids[i], values[i].getAsString(CoursesEntry.COLUMN_COURSE_NAME),
+                        values[i].getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT),
+                        values[i].getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE));
+            }
+        }
+
+        // Notify all listeners once for the whole batch
+        notifyChange(uri);
 
-        // Return the new URI with the ID (of the newly inserted row) appended at the end
-        return ContentUris.withAppendedId(uri, id);
+        return values.length;
     }
 
     @Override
     public int update(@NonNull Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case COURSES:
-                return updateCourse(uri, contentValues, selection, selectionArgs);
-            case COURSE_ID:
-                // For the COURSE_ID code, extract out the ID from the URI,
-                // so we know which row to update. Selection will be "_id=?" and selection
-                // arguments will be a String array containing the actual ID.
-                selection = CoursesEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updateCourse(uri, contentValues, selection, selectionArgs);
-            default:
-                throw new IllegalArgumentException("Update is not supported for " + uri);
+        int rowsUpdated = 0;
+        try {
+            switch (match) {
+                case COURSES:
+                    rowsUpdated = updateCourse(uri, contentValues, selection, selectionArgs);
+                    // The updated rows are not known, so the cache has to be reloaded
+                    if (rowsUpdated != 0 && mCache != null) {
+                        mCache.invalidate();
+                    }
+                    return rowsUpdated;
+                case COURSE_ID:
+                    // For the COURSE_ID code, extract out the ID from the URI,
+                    // so we know which row to update. Selection will be "_id=?" and selection
+                    // arguments will be a String array containing the actual ID.
+                    long id = ContentUris.parseId(uri);
+                    selection = CoursesEntry._ID + "=?";
+                    selectionArgs = new String[]{String.valueOf(id)};
+                    if (isCacheTracking()) {
+                        synchronized (mCache) {
+                            rowsUpdated = updateCourse(uri, contentValues, selection,
+                                    selectionArgs);
+                            if (rowsUpdated != 0) {
+                                mCache.onUpdate(id, contentValues);
+                            }
+                        }
+                    } else {
+                        rowsUpdated = updateCourse(uri, contentValues, selection, selectionArgs);
+                    }
+                    return rowsUpdated;
+                default:
+                    throw new IllegalArgumentException("Update is not supported for " + uri);
+            }
+        } finally {
+            mMetrics.record(ProviderMetrics.OPERATION_UPDATE, getMetricsSlot(match), start,
+                    rowsUpdated);
         }
     }
 
@@ -217,29 +1130,19 @@ public class CourseProvider extends ContentProvider {
         // If the {@link CoursesEntry#COLUMN_COURSE_NAME} key is present,
         // check that the name value is not null.
         if (values.containsKey(CoursesEntry.COLUMN_COURSE_NAME)) {
-            String name = values.getAsString(CoursesEntry.COLUMN_COURSE_NAME);
-            if (name == null) {
-                throw new IllegalArgumentException("Course requires a name");
-            }
+            CourseRules.checkName(values.getAsString(CoursesEntry.COLUMN_COURSE_NAME));
         }
 
         // If the {@link CoursesEntry#COLUMN_COURSE_CREDIT} key is present,
-        // check that the gender value is valid.
+        // check that the credit value is valid.
         if (values.containsKey(CoursesEntry.COLUMN_COURSE_CREDIT)) {
-            Integer credit = values.getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT);
-            if (credit == null || !CoursesEntry.isValid(credit, 1, 15)) {
-                throw new IllegalArgumentException("Course requires valid credit");
-            }
+            CourseRules.checkCredit(values.getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT));
         }
 
         // If the {@link CoursesEntry#COLUMN_COURSE_GRADE} key is present,
-        // check that the weight value is valid.
+        // check that the grade value is valid.
         if (values.containsKey(CoursesEntry.COLUMN_COURSE_GRADE)) {
-            // Check that the weight is greater than or equal to 0 kg
-            Integer grade = values.getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE);
-            if (grade == null || !CoursesEntry.isValid(grade, 6, 10)) {
-                throw new IllegalArgumentException("Course requires valid grade");
-            }
+            CourseRules.checkGrade(values.getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE));
         }
 
 
@@ -251,14 +1154,34 @@ public class CourseProvider extends ContentProvider {
         // Otherwise, get writable database to update the data
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(CoursesEntry.TABLE_NAME, values, selection, selectionArgs);
+        Integer credit = values.getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT);
+        Integer grade = values.getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE);
+
+        int rowsUpdated;
+        beginTransaction(database);
+        try {
+            // Only a change of credit or grade moves the summary totals, in which case the
+            // totals of the affected rows are read before they are overwritten
+            GradeTotals oldTotals = null;
+            if (credit != null || grade != null) {
+                oldTotals = queryTotals(database, selection, selectionArgs);
+            }
+
+            // Perform the update on the database and get the number of rows affected
+            rowsUpdated = database.update(CoursesEntry.TABLE_NAME, values, selection, selectionArgs);
+
+            if (oldTotals != null && rowsUpdated != 0) {
+                applySummaryDelta(database, oldTotals, oldTotals.withValues(credit, grade));
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if (rowsUpdated != 0) {
-            //noinspection ConstantConditions
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         // Return the number of rows updated
@@ -267,39 +1190,405 @@ public class CourseProvider extends ContentProvider {
 
     @Override
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
+        int rowsDeleted = 0;
+        try {
+            if (match == COURSE_ID && isCacheTracking()) {
+                synchronized (mCache) {
+                    rowsDeleted = deleteUri(match, uri, selection, selectionArgs);
+                }
+            } else {
+                rowsDeleted = deleteUri(match, uri, selection, selectionArgs);
+            }
+            return rowsDeleted;
+        } finally {
+            mMetrics.record(ProviderMetrics.OPERATION_DELETE, getMetricsSlot(match), start,
+                    rowsDeleted);
+        }
+    }
+
+    /**
+     * Delete the courses selected by the given URI, which the URI matcher matched to the given
+     * code, and the given selection. Return the number of deleted rows.
+     */
+    private int deleteUri(int match, Uri uri, String selection, String[] selectionArgs) {
         // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
         // Track the number of rows that were deleted
         int rowsDeleted;
 
-        final int match = sUriMatcher.match(uri);
         switch (match) {
             case COURSES:
                 // Delete all rows that match the selection and selection args
-                rowsDeleted = database.delete(CoursesEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             case COURSE_ID:
                 // Delete a single row given by the ID in the URI
                 selection = CoursesEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                rowsDeleted = database.delete(CoursesEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
 
+        beginTransaction(database);
+        try {
+            // Read the totals of the rows about to be deleted, so they can be taken off the summary
+            GradeTotals oldTotals = queryTotals(database, selection, selectionArgs);
+            rowsDeleted = database.delete(CoursesEntry.TABLE_NAME, selection, selectionArgs);
+            if (rowsDeleted != 0) {
+                applySummaryDelta(database, oldTotals, new GradeTotals());
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
         // If 1 or more rows were deleted, then notify all listeners that the data at the
         // given URI has changed
         if (rowsDeleted != 0) {
-            //noinspection ConstantConditions
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (match == COURSE_ID && isCacheTracking()) {
+                mCache.onDelete(ContentUris.parseId(uri));
+            } else if (mCache != null) {
+                // The deleted rows are not known, so the cache has to be reloaded
+                mCache.invalidate();
+            }
+            notifyChange(uri);
         }
 
         // Return the number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Return the totals over the courses matching the given selection.
+     */
+    private GradeTotals queryTotals(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        String[] projection = {
+                "COUNT(*)",
+                "IFNULL(SUM(" + CoursesEntry.COLUMN_COURSE_GRADE + "), 0)",
+                "IFNULL(SUM(" + CoursesEntry.COLUMN_COURSE_CREDIT + "), 0)",
+                "IFNULL(SUM(" + CoursesEntry.COLUMN_COURSE_GRADE + " * "
+                        + CoursesEntry.COLUMN_COURSE_CREDIT + "), 0)"};
+
+        Cursor cursor = database.query(CoursesEntry.TABLE_NAME, projection, selection, selectionArgs,
+                null, null, null);
+        try {
+            cursor.moveToFirst();
+            return new GradeTotals(cursor.getLong(0), cursor.getLong(1), cursor.getLong(2),
+                    cursor.getLong(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Move the running totals of the summary table by the change from the given old totals of
+     * some courses to their new totals. Must be called inside the transaction that performs the
+     * matching change on the courses table.
+     */
+    private void applySummaryDelta(SQLiteDatabase database, GradeTotals oldTotals,
+                                   GradeTotals newTotals) {
+        applySummaryDelta(database, newTotals.getCount() - oldTotals.getCount(),
+                newTotals.getGradeSum() - oldTotals.getGradeSum(),
+                newTotals.getCreditSum() - oldTotals.getCreditSum(),
+                newTotals.getWeightedSum() - oldTotals.getWeightedSum());
+    }
+
+    /**
+     * Add the given deltas to the running totals of the summary table. Must be called inside the
+     * transaction that performs the matching change on the courses table.
+     */
+    private void applySummaryDelta(SQLiteDatabase database, long count, long gradeSum, long creditSum,
+                                   long weightedSum) {
+        database.execSQL("UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                        + SummaryEntry.COLUMN_COURSE_COUNT + " = " + SummaryEntry.COLUMN_COURSE_COUNT + " + ?, "
+                        + SummaryEntry.COLUMN_GRADE_SUM + " = " + SummaryEntry.COLUMN_GRADE_SUM + " + ?, "
+                        + SummaryEntry.COLUMN_CREDIT_SUM + " = " + SummaryEntry.COLUMN_CREDIT_SUM + " + ?, "
+                        + SummaryEntry.COLUMN_WEIGHTED_SUM + " = " + SummaryEntry.COLUMN_WEIGHTED_SUM + " + ? "
+                        + "WHERE " + SummaryEntry._ID + " = " + SummaryEntry.SUMMARY_ROW_ID,
+                new Object[]{count, gradeSum, creditSum, weightedSum});
+    }
+
+    /**
+     * Open {@link CoursesEntry#CONTENT_CSV_URI}: reading exports all courses, writing imports
+     * courses. Either way the caller gets one end of a pipe that is served by a background thread,
+     * so neither side holds more than a buffer of the file.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode)
+            throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != CSV) {
+            return super.openFile(uri, mode);
+        }
+
+        switch (mode) {
+            case "r":
+                return openPipeHelper(uri, CoursesEntry.CONTENT_CSV_TYPE, null, null,
+                        new PipeDataWriter<Void>() {
+                            @Override
+                            public void writeDataToPipe(@NonNull ParcelFileDescriptor output,
+                                                        @NonNull Uri uri, @NonNull String mimeType,
+                                                        Bundle opts, Void args) {
+                                exportCourses(output);
+                            }
+                        });
+            case "w":
+            case "wt":
+                return openImportPipe();
+            default:
+                throw new FileNotFoundException("Unsupported mode " + mode + " for " + uri);
+        }
+    }
+
+    /**
+     * Write all courses as CSV to the given pipe, ordered by ID.
+     */
+    private void exportCourses(ParcelFileDescriptor output) {
+        long start = System.nanoTime();
+        int rows = 0;
+
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        String[] projection = {
+                CoursesEntry._ID,
+                CoursesEntry.COLUMN_COURSE_NAME,
+                CoursesEntry.COLUMN_COURSE_CREDIT,
+                CoursesEntry.COLUMN_COURSE_GRADE};
+        String[] selectionArgs = new String[1];
+        String limit = Integer.toString(EXPORT_PAGE_ROWS);
+        long lastId = Long.MIN_VALUE;
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new ParcelFileDescriptor.AutoCloseOutputStream(output), CSV_CHARSET),
+                CSV_BUFFER_SIZE);
+        try {
+            CourseCsv.writeHeader(writer);
+
+            int pageRows;
+            do {
+                selectionArgs[0] = Long.toString(lastId);
+                Cursor page = database.query(CoursesEntry.TABLE_NAME, projection,
+                        CoursesEntry._ID + " > ?", selectionArgs, null, null, CoursesEntry._ID,
+                        limit);
+                try {
+                    pageRows = page.getCount();
+                    while (page.moveToNext()) {
+                        lastId = page.getLong(0);
+                        CourseCsv.writeCourse(writer, page.getString(1), page.getInt(2),
+                                page.getInt(3));
+                    }
+                } finally {
+                    page.close();
+                }
+                rows += pageRows;
+            } while (pageRows == EXPORT_PAGE_ROWS);
+
+            writer.flush();
+            logThroughput("Exported", rows, start);
+        } catch (IOException e) {
+            // Most likely the reader closed its end before the end of the file
+            Log.w(LOG_TAG, "Export of courses stopped after " + rows + " rows", e);
+        } finally {
+            closeQuietly(writer);
+            mMetrics.record(ProviderMetrics.OPERATION_EXPORT, getMetricsSlot(CSV), start, rows);
+        }
+    }
+
+    /**
+     * Return the write end of a pipe whose courses are imported by a background thread. From
+     * API 19 the pipe is reliable, so the caller learns of a failed import through
+     * {@link ParcelFileDescriptor#checkError()}.
+     */
+    private ParcelFileDescriptor openImportPipe() throws FileNotFoundException {
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                    ? ParcelFileDescriptor.createReliablePipe()
+                    : ParcelFileDescriptor.createPipe();
+        } catch (IOException e) {
+            throw new FileNotFoundException("Failed to create pipe: " + e.getMessage());
+        }
+
+        setImportStatus(CourseContract.IMPORT_STATE_RUNNING, 0, null);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                importCourses(pipe[0]);
+            }
+        }, LOG_TAG + " import").start();
+        return pipe[1];
+    }
+
+    /**
+     * Insert all courses read as CSV from the given pipe in a single transaction. The file is
+     * parsed, validated and staged in the cache directory first, so a slow writer does not hold
+     * the database lock; only inserting the staged courses runs in the transaction. Like a batch,
+     * listeners are notified only after commit and an invalid line adds nothing.
+     */
+    private void importCourses(ParcelFileDescriptor input) {
+        long start = System.nanoTime();
+        int rows = 0;
+        String error = null;
+        File staged = null;
+
+        try {
+            staged = File.createTempFile("import", ".tmp", getContext().getCacheDir());
+            // The descriptor is closed below, with the error if there is one
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(input.getFileDescriptor()), CSV_CHARSET),
+                    CSV_BUFFER_SIZE);
+            int stagedRows = stageCourses(new CourseCsv.Reader(reader), staged);
+            rows = insertStagedCourses(staged, stagedRows);
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Import of courses failed, no course was added", e);
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        } finally {
+            if (staged != null && !staged.delete()) {
+                Log.w(LOG_TAG, "Failed to delete " + staged);
+            }
+            closeImportPipe(input, error);
+            mMetrics.record(ProviderMetrics.OPERATION_IMPORT, getMetricsSlot(CSV), start, rows);
+        }
+
+        if (error == null) {
+            logThroughput("Imported", rows, start);
+            setImportStatus(CourseContract.IMPORT_STATE_SUCCEEDED, rows, null);
+        } else {
+            setImportStatus(CourseContract.IMPORT_STATE_FAILED, 0, error);
+        }
+    }
+
+    /**
+     * Validate the courses of the given reader and write them to the given file, outside of any
+     * transaction. Return the number of courses written.
+     */
+    private static int stageCourses(CourseCsv.Reader reader, File staged) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(staged), CSV_BUFFER_SIZE));
+        int rows = 0;
+        try {
+            ContentValues course;
+            while ((course = reader.readCourse()) != null) {
+                try {
+                    validateCourse(course);
+                } catch (IllegalArgumentException e) {
+                    throw new CourseCsv.CsvException(e.getMessage() + " at line "
+                            + reader.getLineNumber());
+                }
+
+                output.writeUTF(course.getAsString(CoursesEntry.COLUMN_COURSE_NAME));
+                output.writeByte(course.getAsInteger(CoursesEntry.COLUMN_COURSE_CREDIT));
+                output.writeByte(course.getAsInteger(CoursesEntry.COLUMN_COURSE_GRADE));
+                rows++;
+            }
+        } finally {
+            output.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Insert the given number of courses staged by {@link #stageCourses} in a single transaction,
+     * in chunks of {@link #IMPORT_CHUNK_ROWS}. Return the number of inserted courses.
+     */
+    private int insertStagedCourses(File staged, int stagedRows) throws IOException {
+        if (stagedRows == 0) {
+            return 0;
+        }
+
+        DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(staged), CSV_BUFFER_SIZE));
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        Set<Uri> changedUris = new HashSet<>();
+        int rows = 0;
+
+        mBatchNotifications.set(changedUris);
+        beginTransaction(database);
+        try {
+            ContentValues[] chunk = new ContentValues[Math.min(stagedRows, IMPORT_CHUNK_ROWS)];
+            while (rows < stagedRows) {
+                int size = Math.min(stagedRows - rows, chunk.length);
+                if (size < chunk.length) {
+                    chunk = new ContentValues[size];
+                }
+                for (int i = 0; i < size; i++) {
+                    ContentValues course = new ContentValues(3);
+                    course.put(CoursesEntry.COLUMN_COURSE_NAME, input.readUTF());
+                    course.put(CoursesEntry.COLUMN_COURSE_CREDIT, input.readUnsignedByte());
+                    course.put(CoursesEntry.COLUMN_COURSE_GRADE, input.readUnsignedByte());
+                    chunk[i] = course;
+                }
+                rows += bulkInsertCourses(CoursesEntry.CONTENT_URI, chunk);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mBatchNotifications.remove();
+            input.close();
+
+            // The chunks were not recorded in the cache, see isCacheTracking()
+            if (mCache != null) {
+                mCache.invalidate();
+            }
+        }
+
+        for (Uri uri : changedUris) {
+            notifyChange(uri);
+        }
+        mNotifier.flush();
+        return rows;
+    }
+
+    /**
+     * Close the read end of an import pipe, passing the given error, if any, to the writer where
+     * the pipe is reliable.
+     */
+    private static void closeImportPipe(ParcelFileDescriptor input, String error) {
+        try {
+            if (error != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                closeWithError(input, error);
+            } else {
+                input.close();
+            }
+        } catch (IOException e) {
+            // The other end of the pipe is gone, there is nothing left to release
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void closeWithError(ParcelFileDescriptor input, String error)
+            throws IOException {
+        input.closeWithError(error);
+    }
+
+    /**
+     * Record the state of the last import, see {@link CourseContract#METHOD_GET_IMPORT_STATUS}.
+     */
+    private void setImportStatus(String state, int rows, String error) {
+        Bundle status = new Bundle();
+        status.putString(CourseContract.IMPORT_STATE, state);
+        status.putLong(CourseContract.IMPORT_ROWS, rows);
+        if (error != null) {
+            status.putString(CourseContract.IMPORT_ERROR, error);
+        }
+        mImportStatus = status;
+    }
+
+    private static void logThroughput(String action, int rows, long startNanos) {
+        long millis = (System.nanoTime() - startNanos) / 1000000;
+        Log.i(LOG_TAG, action + " " + rows + " courses in " + millis + " ms ("
+                + rows * 1000L / Math.max(millis, 1) + " rows/s)");
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // The other end of the pipe is gone, there is nothing left to release
+        }
+    }
+
     @Override
     public String getType(@NonNull Uri uri) {
         final int match = sUriMatcher.match(uri);
@@ -308,6 +1597,12 @@ public class CourseProvider extends ContentProvider {
                 return CoursesEntry.CONTENT_LIST_TYPE;
             case COURSE_ID:
                 return CoursesEntry.CONTENT_ITEM_TYPE;
+            case SUMMARY:
+                return SummaryEntry.CONTENT_ITEM_TYPE;
+            case SEARCH:
+                return CoursesEntry.CONTENT_LIST_TYPE;
+            case CSV:
+                return CoursesEntry.CONTENT_CSV_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
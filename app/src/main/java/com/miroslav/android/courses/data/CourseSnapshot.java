@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+import com.miroslav.android.courses.grading.CourseRules;
+import com.miroslav.android.courses.grading.GradeTotals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of the courses table.
+ * <p>
+ * All numbers are unsigned varints (7 bits per byte, least significant group first, high bit set
+ * on all but the last byte) unless noted otherwise:
+ * <pre>
+ * magic        4 bytes "CRS1"
+ * names        count, then per distinct name its UTF-8 length and bytes
+ * courses      count, then per course ordered by ID: the ID minus the previous ID (0 before the
+ *              first), the index of its name, its credits and its grade
+ * checksum     4 bytes big endian, CRC32 of all bytes before it
+ * </pre>
+ * With dense IDs a course takes 4 bytes, or 5 once there are 128 distinct names or more, plus its
+ * share of the name table. The database file also holds the row headers, the search and sort
+ * indexes and free pages.
+ */
+final class CourseSnapshot {
+
+    /**
+     * "CRS1", the last character is the format version
+     */
+    private static final int MAGIC = 0x43525331;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Courses read from the database per query while writing, see CourseProvider.EXPORT_PAGE_ROWS
+     */
+    private static final int PAGE_ROWS = 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CourseSnapshot() {
+    }
+
+    /**
+     * Write all courses of the given database to the given file, replacing it only once the
+     * snapshot is complete. Call within a transaction, so both passes over the courses see
+     * the same rows. Return the number of courses written.
+     */
+    static int write(SQLiteDatabase database, File file) throws IOException {
+        // First pass: the name dictionary, and the number of courses from the group sizes
+        HashMap<String, Integer> names = new HashMap<>();
+        int count = 0;
+        Cursor cursor = database.query(CoursesEntry.TABLE_NAME,
+                new String[]{CoursesEntry.COLUMN_COURSE_NAME, "COUNT(*)"},
+                null, null, CoursesEntry.COLUMN_COURSE_NAME, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                names.put(cursor.getString(0), names.size());
+                count += cursor.getInt(1);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            Output output = new Output(out.getChannel());
+            output.putInt(MAGIC);
+
+            String[] dictionary = new String[names.size()];
+            for (Map.Entry<String, Integer> name : names.entrySet()) {
+                dictionary[name.getValue()] = name.getKey();
+            }
+            output.putVarint(dictionary.length);
+            for (String name : dictionary) {
+                byte[] bytes = name.getBytes(UTF_8);
+                output.putVarint(bytes.length);
+                output.putBytes(bytes);
+            }
+
+            // Second pass: the courses, paged by ID like the CSV export
+            output.putVarint(count);
+            String[] projection = {
+                    CoursesEntry._ID,
+                    CoursesEntry.COLUMN_COURSE_NAME,
+                    CoursesEntry.COLUMN_COURSE_CREDIT,
+                    CoursesEntry.COLUMN_COURSE_GRADE};
+            String[] selectionArgs = new String[1];
+            String limit = Integer.toString(PAGE_ROWS);
+            long lastId = 0;
+            int written = 0;
+            int pageRows;
+            do {
+                selectionArgs[0] = Long.toString(lastId);
+                Cursor page = database.query(CoursesEntry.TABLE_NAME, projection,
+                        CoursesEntry._ID + " > ?", selectionArgs, null, null, CoursesEntry._ID,
+                        limit);
+                try {
+                    pageRows = page.getCount();
+                    while (page.moveToNext()) {
+                        long id = page.getLong(0);
+                        output.putVarint(id - lastId);
+                        output.putVarint(names.get(page.getString(1)));
+                        output.putVarint(page.getInt(2));
+                        output.putVarint(page.getInt(3));
+                        lastId = id;
+                    }
+                } finally {
+                    page.close();
+                }
+                written += pageRows;
+            } while (pageRows == PAGE_ROWS);
+
+            if (written != count) {
+                throw new IOException("Courses changed while writing the snapshot");
+            }
+            output.finish();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+        return count;
+    }
+
+    /**
+     * Replace all courses of the given database with those of the snapshot in the given file.
+     * Call within a transaction, so an invalid snapshot leaves the courses untouched once it is
+     * rolled back. Return the totals over the restored courses.
+     */
+    static GradeTotals restore(File file, SQLiteDatabase database) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size < 8 || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a course snapshot: " + file);
+            }
+
+            // The mapping stays valid after the channel is closed, pages are read in on access
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            checkCrc(buffer);
+            buffer.limit((int) size - 4);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a course snapshot: " + file);
+            }
+            return restore(buffer, database);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated course snapshot: " + file);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static GradeTotals restore(ByteBuffer buffer, SQLiteDatabase database) throws IOException {
+        String[] names = new String[getCount(buffer)];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < names.length; i++) {
+            int length = getCount(buffer);
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            names[i] = new String(bytes, 0, length, UTF_8);
+        }
+
+        int count = getCount(buffer);
+        GradeTotals totals = new GradeTotals();
+
+        database.delete(CoursesEntry.TABLE_NAME, null, null);
+        SQLiteStatement statement = database.compileStatement("INSERT INTO "
+                + CoursesEntry.TABLE_NAME + " ("
+                + CoursesEntry._ID + ", "
+                + CoursesEntry.COLUMN_COURSE_NAME + ", "
+                + CoursesEntry.COLUMN_COURSE_CREDIT + ", "
+                + CoursesEntry.COLUMN_COURSE_GRADE + ") VALUES (?, ?, ?, ?)");
+        try {
+            long id = 0;
+            for (int i = 0; i < count; i++) {
+                id += getVarint(buffer);
+                int name = getInt(buffer);
+                int credit = getInt(buffer);
+                int grade = getInt(buffer);
+                if (name >= names.length || !CourseRules.isValidCredit(credit)
+                        || !CourseRules.isValidGrade(grade)) {
+                    throw new IOException("Invalid course " + i + " in snapshot");
+                }
+
+                statement.bindLong(1, id);
+                statement.bindString(2, names[name]);
+                statement.bindLong(3, credit);
+                statement.bindLong(4, grade);
+                statement.executeInsert();
+
+                totals.add(credit, grade);
+            }
+        } finally {
+            statement.close();
+        }
+
+        if (buffer.hasRemaining()) {
+            throw new IOException("Unexpected data after the courses in snapshot");
+        }
+        return totals;
+    }
+
+    /**
+     * Check the checksum at the end of the given buffer against the bytes before it.
+     */
+    private static void checkCrc(ByteBuffer buffer) throws IOException {
+        int end = buffer.limit() - 4;
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[BUFFER_SIZE];
+        buffer.position(0);
+        while (buffer.position() < end) {
+            int length = Math.min(chunk.length, end - buffer.position());
+            buffer.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        if (buffer.getInt() != (int) crc.getValue()) {
+            throw new IOException("Checksum mismatch in course snapshot");
+        }
+        buffer.position(0);
+    }
+
+    /**
+     * Read a varint that counts items following it, which cannot be more than there are bytes
+     * left.
+     */
+    private static int getCount(ByteBuffer buffer) throws IOException {
+        long count = getVarint(buffer);
+        if (count > buffer.remaining()) {
+            throw new IOException("Invalid count " + count + " in snapshot");
+        }
+        return (int) count;
+    }
+
+    private static int getInt(ByteBuffer buffer) throws IOException {
+        long value = getVarint(buffer);
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid number " + value + " in snapshot");
+        }
+        return (int) value;
+    }
+
+    private static long getVarint(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint in snapshot");
+    }
+
+    /**
+     * Buffered writer to a file channel that keeps the checksum of everything written.
+     */
+    private static final class Output {
+
+        private final FileChannel mChannel;
+        private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 mCrc = new CRC32();
+
+        Output(FileChannel channel) {
+            mChannel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensureRemaining(4);
+            mBuffer.putInt(value);
+        }
+
+        void putVarint(long value) throws IOException {
+            ensureRemaining(10);
+            while ((value & ~0x7fL) != 0) {
+                mBuffer.put((byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            mBuffer.put((byte) value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensureRemaining(1);
+                int length = Math.min(mBuffer.remaining(), bytes.length - offset);
+                mBuffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        /**
+         * Write out the buffer followed by the checksum.
+         */
+        void finish() throws IOException {
+            flush();
+            mBuffer.putInt((int) mCrc.getValue());
+            mBuffer.flip();
+            write();
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (mBuffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            mCrc.update(mBuffer.array(), 0, mBuffer.position());
+            mBuffer.flip();
+            write();
+        }
+
+        private void write() throws IOException {
+            while (mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Gathers the URIs changed by {@link CourseProvider} and notifies listeners of each of them once
+ * per window, so a burst of writes reloads every loader once instead of once per write.
+ * <p>
+ * The window starts with the first change after the previous notifications went out, so no
+ * notification is held back longer than the window however long the burst lasts. Changes made
+ * during a window are always followed by a notification sent after them, so listeners never miss
+ * the final state.
+ * <p>
+ * Single-row inserts, updates and deletes wait for the end of the window, so their listeners are
+ * notified up to one window after the write was committed. Bulk inserts, batches and CSV imports
+ * are bursts by themselves and {@link #flush()} once they are committed.
+ */
+final class NotificationCoalescer {
+
+    private final ContentResolver mResolver;
+    private final ProviderMetrics mMetrics;
+
+    /**
+     * Time changes are gathered for before listeners are notified, 0 to notify right away
+     */
+    private final long mWindowMillis;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Changed URIs listeners have not been notified of yet, in the order they first changed
+     */
+    private final Set<Uri> mPendingUris = new LinkedHashSet<>();
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Constructs a new {@link NotificationCoalescer}.
+     *
+     * @param windowMillis time changes are gathered for before listeners are notified, 0 to
+     *                     notify right away
+     */
+    NotificationCoalescer(ContentResolver resolver, ProviderMetrics metrics, long windowMillis) {
+        mResolver = resolver;
+        mMetrics = metrics;
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Notify listeners that the data at the given URI has changed, once the current window ends.
+     */
+    void add(Uri uri) {
+        if (mWindowMillis <= 0) {
+            send(uri);
+            return;
+        }
+
+        synchronized (mPendingUris) {
+            if (mPendingUris.isEmpty()) {
+                mHandler.postDelayed(mFlush, mWindowMillis);
+            }
+            if (!mPendingUris.add(uri)) {
+                mMetrics.countCoalescedNotification();
+            }
+        }
+    }
+
+    /**
+     * Notify listeners of all pending changes right away, ending the current window.
+     */
+    void flush() {
+        Uri[] uris;
+        synchronized (mPendingUris) {
+            mHandler.removeCallbacks(mFlush);
+            uris = mPendingUris.toArray(new Uri[mPendingUris.size()]);
+            mPendingUris.clear();
+        }
+
+        for (Uri uri : uris) {
+            send(uri);
+        }
+    }
+
+    private void send(Uri uri) {
+        mMetrics.countNotification();
+        mResolver.notifyChange(uri, null);
+    }
+}
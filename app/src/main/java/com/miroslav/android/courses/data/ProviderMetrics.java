@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.os.Bundle;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and throughput counters of {@link CourseProvider}, kept per operation and URI.
+ * <p>
+ * Recording only updates atomic counters, so it never blocks the calling thread. Reading or
+ * resetting the counters while operations are running may mix values from before and after the
+ * operations that ran meanwhile, which is fine for diagnostics.
+ */
+final class ProviderMetrics {
+
+    /**
+     * Operations that are timed
+     */
+    static final int OPERATION_QUERY = 0;
+    static final int OPERATION_INSERT = 1;
+    static final int OPERATION_BULK_INSERT = 2;
+    static final int OPERATION_UPDATE = 3;
+    static final int OPERATION_DELETE = 4;
+    static final int OPERATION_EXPORT = 5;
+    static final int OPERATION_IMPORT = 6;
+    static final int OPERATION_WRITE_SNAPSHOT = 7;
+    static final int OPERATION_RESTORE_SNAPSHOT = 8;
+    static final int OPERATION_APPLY_BATCH = 9;
+    static final int OPERATION_AGGREGATES = 10;
+
+    /**
+     * Names of the operations in the metrics bundle, in the order of their constants
+     */
+    private static final String[] OPERATION_NAMES = {
+            "query", "insert", "bulk_insert", "update", "delete", "export", "import",
+            "write_snapshot", "restore_snapshot", "apply_batch", "aggregates"};
+
+    /**
+     * Number of latency buckets. Bucket i counts operations that took from 2^i up to 2^(i+1)
+     * microseconds, the first one also counts faster ones and the last one also slower ones.
+     */
+    static final int BUCKET_COUNT = 24;
+
+    /**
+     * Names of the URIs in the metrics bundle, in the order of their slots
+     */
+    private final String[] mUriNames;
+
+    /**
+     * Timers by operation and URI slot
+     */
+    private final Timer[][] mTimers;
+
+    private final AtomicLong mTransactions = new AtomicLong();
+    private final AtomicLong mNotifications = new AtomicLong();
+    private final AtomicLong mCoalescedNotifications = new AtomicLong();
+    private final AtomicLong mCancelledQueries = new AtomicLong();
+
+    /**
+     * Constructs a new {@link ProviderMetrics}.
+     *
+     * @param uriNames names of the URIs operations are recorded for, the index of a name is the
+     *                 slot operations on that URI are recorded under
+     */
+    ProviderMetrics(String[] uriNames) {
+        mUriNames = uriNames;
+        mTimers = new Timer[OPERATION_NAMES.length][uriNames.length];
+        for (Timer[] timers : mTimers) {
+            for (int slot = 0; slot < timers.length; slot++) {
+                timers[slot] = new Timer();
+            }
+        }
+    }
+
+    /**
+     * Record an operation on the URI in the given slot that started at the given
+     * {@link System#nanoTime()} and affected or returned the given number of rows. Operations on
+     * unknown URIs (any other slot) are not recorded.
+     */
+    void record(int operation, int slot, long startNanos, int rows) {
+        if (slot < 0 || slot >= mUriNames.length) {
+            return;
+        }
+        mTimers[operation][slot].record(System.nanoTime() - startNanos, rows);
+    }
+
+    /**
+     * Record a database transaction started by the provider.
+     */
+    void countTransaction() {
+        mTransactions.incrementAndGet();
+    }
+
+    /**
+     * Record a change notification sent by the provider.
+     */
+    void countNotification() {
+        mNotifications.incrementAndGet();
+    }
+
+    /**
+     * Record a change notification merged into one already pending for the same URI.
+     */
+    void countCoalescedNotification() {
+        mCoalescedNotifications.incrementAndGet();
+    }
+
+    /**
+     * Record a query stopped because its caller cancelled it.
+     */
+    void countCancelledQuery() {
+        mCancelledQueries.incrementAndGet();
+    }
+
+    /**
+     * Return the counters as described by {@link CourseContract#METHOD_GET_METRICS}. Operations
+     * that did not run since the last reset are left out.
+     */
+    Bundle toBundle() {
+        Bundle metrics = new Bundle();
+        metrics.putLong(CourseContract.METRICS_TRANSACTIONS, mTransactions.get());
+        metrics.putLong(CourseContract.METRICS_NOTIFICATIONS, mNotifications.get());
+        metrics.putLong(CourseContract.METRICS_COALESCED_NOTIFICATIONS,
+                mCoalescedNotifications.get());
+        metrics.putLong(CourseContract.METRICS_CANCELLED_QUERIES, mCancelledQueries.get());
+
+        for (int operation = 0; operation < mTimers.length; operation++) {
+            for (int slot = 0; slot < mUriNames.length; slot++) {
+                Timer timer = mTimers[operation][slot];
+                if (timer.mCount.get() > 0) {
+                    metrics.putBundle(OPERATION_NAMES[operation] + "/" + mUriNames[slot],
+                            timer.toBundle());
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Set all counters back to 0.
+     */
+    void reset() {
+        mTransactions.set(0);
+        mNotifications.set(0);
+        mCoalescedNotifications.set(0);
+        mCancelledQueries.set(0);
+        for (Timer[] timers : mTimers) {
+            for (Timer timer : timers) {
+                timer.reset();
+            }
+        }
+    }
+
+    /**
+     * Latency histogram and row count of one operation on one URI.
+     */
+    private static final class Timer {
+
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mRows = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+        void record(long nanos, int rows) {
+            mCount.incrementAndGet();
+            mRows.addAndGet(rows);
+            mTotalNanos.addAndGet(nanos);
+            mBuckets.incrementAndGet(getBucket(nanos));
+
+            long max = mMaxNanos.get();
+            while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+                max = mMaxNanos.get();
+            }
+        }
+
+        Bundle toBundle() {
+            long[] buckets = new long[BUCKET_COUNT];
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets[i] = mBuckets.get(i);
+                count += buckets[i];
+            }
+
+            Bundle timer = new Bundle();
+            timer.putLong(CourseContract.METRICS_COUNT, mCount.get());
+            timer.putLong(CourseContract.METRICS_ROWS, mRows.get());
+            timer.putLong(CourseContract.METRICS_TOTAL_MICROS, mTotalNanos.get() / 1000);
+            timer.putLong(CourseContract.METRICS_MAX_MICROS, mMaxNanos.get() / 1000);
+            timer.putLong(CourseContract.METRICS_P50_MICROS, getPercentile(buckets, count, 50));
+            timer.putLong(CourseContract.METRICS_P90_MICROS, getPercentile(buckets, count, 90));
+            timer.putLong(CourseContract.METRICS_P99_MICROS, getPercentile(buckets, count, 99));
+            timer.putLongArray(CourseContract.METRICS_HISTOGRAM, buckets);
+            return timer;
+        }
+
+        void reset() {
+            mCount.set(0);
+            mRows.set(0);
+            mTotalNanos.set(0);
+            mMaxNanos.set(0);
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mBuckets.set(i, 0);
+            }
+        }
+
+        /**
+         * Return the bucket counting operations that took the given time.
+         */
+        private static int getBucket(long nanos) {
+            long micros = nanos / 1000;
+            if (micros <= 1) {
+                return 0;
+            }
+            // Index of the highest set bit, that is the rounded down base 2 logarithm
+            return Math.min(63 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+        }
+
+        /**
+         * Return the upper bound in microseconds of the bucket holding the given percentile of
+         * the operations, or 0 if there were none.
+         */
+        private static long getPercentile(long[] buckets, long count, int percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            // Rank of the operation at the percentile, rounded up
+            long rank = (count * percentile + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return 1L << (i + 1);
+                }
+            }
+            return 1L << BUCKET_COUNT;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of query results used by {@link CourseProvider}, so that a query repeated with
+ * the same URI, projection, selection and sort order is not run against the database again.
+ * <p>
+ * Results are copied out of the database cursor once, and every hit returns a new cursor over the
+ * shared copy. Each result remembers the write generation it was read at, and the provider moves
+ * to a new generation after every committed write, so a result is never returned once the data it
+ * was read from has changed. Least recently used results are evicted once the cache holds more
+ * than the configured number of rows.
+ */
+final class QueryResultCache {
+
+    /**
+     * Largest number of rows in a single result that is cached
+     */
+    private final int mMaxResultRows;
+
+    private final LruCache<Key, Result> mResults;
+
+    private final AtomicLong mGeneration = new AtomicLong();
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * Constructs a new {@link QueryResultCache}.
+     *
+     * @param maxRows       largest number of rows held over all results
+     * @param maxResultRows largest number of rows in a single result that is cached
+     */
+    QueryResultCache(int maxRows, int maxResultRows) {
+        mMaxResultRows = maxResultRows;
+        mResults = new LruCache<Key, Result>(maxRows) {
+            @Override
+            protected int sizeOf(Key key, Result result) {
+                // Count the result itself too, so empty results still take up room
+                return result.mCount + 1;
+            }
+        };
+    }
+
+    /**
+     * Return the current write generation. Must be read before running a query whose result is
+     * passed to {@link #put(Key, long, Cursor)}.
+     */
+    long getGeneration() {
+        return mGeneration.get();
+    }
+
+    /**
+     * Move to a new write generation, so no result read before is returned again. Must be called
+     * after every committed write, before listeners are notified.
+     */
+    void onDataChanged() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Return a new cursor over the cached result of the given query, or null if there is no
+     * result read at the current write generation.
+     */
+    Cursor get(Key key) {
+        Result result = mResults.get(key);
+        if (result != null && result.mGeneration != mGeneration.get()) {
+            mResults.remove(key);
+            result = null;
+        }
+
+        if (result == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        mHits.incrementAndGet();
+        return new ResultCursor(result);
+    }
+
+    /**
+     * Cache the result of the given query, read at the given write generation. The given cursor
+     * is consumed and closed, and a cursor over the cached copy is returned in its place. Results
+     * too large to cache are returned as they are.
+     */
+    Cursor put(Key key, long generation, Cursor cursor) {
+        if (cursor.getCount() > mMaxResultRows) {
+            return cursor;
+        }
+
+        Result result;
+        try {
+            result = new Result(cursor, generation);
+        } finally {
+            cursor.close();
+        }
+
+        // A write committed while the query ran makes the result stale right away
+        if (generation == mGeneration.get()) {
+            mResults.put(key, result);
+        }
+        return new ResultCursor(result);
+    }
+
+    /**
+     * Return the number of queries answered from the cache.
+     */
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    /**
+     * Return the number of queries that had to go to the database.
+     */
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * Return the number of results evicted to make room for newer ones.
+     */
+    int getEvictionCount() {
+        return mResults.evictionCount();
+    }
+
+    /**
+     * Return the number of cached results.
+     */
+    int getResultCount() {
+        return mResults.snapshot().size();
+    }
+
+    /**
+     * Identifies a query by everything that determines its result. The arrays are copied, so a
+     * caller reusing its projection or arguments cannot change a key already in the cache.
+     */
+    static final class Key {
+
+        private final int mMatch;
+        private final String mUri;
+        private final String[] mProjection;
+        private final String mSelection;
+        private final String[] mSelectionArgs;
+        private final String mSortOrder;
+        private final int mHashCode;
+
+        /**
+         * Constructs a new {@link Key}.
+         *
+         * @param match URI matcher code of the URI
+         */
+        Key(int match, String uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+            mMatch = match;
+            mUri = uri;
+            mProjection = projection != null ? projection.clone() : null;
+            mSelection = selection;
+            mSelectionArgs = selectionArgs != null ? selectionArgs.clone() : null;
+            mSortOrder = sortOrder;
+
+            int hashCode = match;
+            hashCode = 31 * hashCode + uri.hashCode();
+            hashCode = 31 * hashCode + Arrays.hashCode(mProjection);
+            hashCode = 31 * hashCode + (selection != null ? selection.hashCode() : 0);
+            hashCode = 31 * hashCode + Arrays.hashCode(mSelectionArgs);
+            hashCode = 31 * hashCode + (sortOrder != null ? sortOrder.hashCode() : 0);
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mHashCode == key.mHashCode
+                    && mMatch == key.mMatch
+                    && mUri.equals(key.mUri)
+                    && Arrays.equals(mProjection, key.mProjection)
+                    && (mSelection != null ? mSelection.equals(key.mSelection) : key.mSelection == null)
+                    && Arrays.equals(mSelectionArgs, key.mSelectionArgs)
+                    && (mSortOrder != null ? mSortOrder.equals(key.mSortOrder) : key.mSortOrder == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * Immutable copy of the rows of a cursor, stored row by row.
+     */
+    private static final class Result {
+
+        private final String[] mColumnNames;
+        private final Object[] mValues;
+        private final int mCount;
+        private final long mGeneration;
+
+        Result(Cursor cursor, long generation) {
+            mColumnNames = cursor.getColumnNames();
+            mCount = cursor.getCount();
+            mGeneration = generation;
+
+            int columnCount = mColumnNames.length;
+            mValues = new Object[mCount * columnCount];
+            int index = 0;
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                for (int column = 0; column < columnCount; column++) {
+                    mValues[index++] = getValue(cursor, column);
+                }
+            }
+        }
+
+        /**
+         * Return the value of the given column of the current row, in the type it is stored as.
+         */
+        private static Object getValue(Cursor cursor, int column) {
+            switch (cursor.getType(column)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    return null;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return cursor.getLong(column);
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return cursor.getDouble(column);
+                case Cursor.FIELD_TYPE_BLOB:
+                    return cursor.getBlob(column);
+                default:
+                    return cursor.getString(column);
+            }
+        }
+    }
+
+    /**
+     * Read-only cursor over a cached {@link Result}.
+     */
+    private static final class ResultCursor extends AbstractCursor {
+
+        private final Result mResult;
+
+        ResultCursor(Result result) {
+            mResult = result;
+        }
+
+        @Override
+        public int getCount() {
+            return mResult.mCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mResult.mColumnNames;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            return value != null ? value.toString() : null;
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return value != null ? parseDouble(value.toString()).longValue() : 0;
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return value != null ? parseDouble(value.toString()) : 0;
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            return value instanceof byte[] ? (byte[]) value : super.getBlob(column);
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            } else if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+
+        /**
+         * Return the value of the given column of the current row.
+         */
+        private Object get(int column) {
+            int position = getPosition();
+            if (position < 0 || position >= mResult.mCount) {
+                throw new IllegalStateException("Cursor is not positioned on a row, position "
+                        + position + " of " + mResult.mCount);
+            }
+            return mResult.mValues[position * mResult.mColumnNames.length + column];
+        }
+
+        /**
+         * Return the given text as a number, or 0 if it is not one, the way SQLite converts text.
+         */
+        private static Double parseDouble(String text) {
+            try {
+                return Double.valueOf(text.trim());
+            } catch (NumberFormatException e) {
+                return 0d;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.content.ContentValues;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link CourseCsv}. Runs under Robolectric for {@link ContentValues}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class CourseCsvTest {
+
+    @Test
+    public void readsCoursesAfterHeader() throws IOException {
+        CourseCsv.Reader reader = reader(
+                "name,credits,grade\r\nMathematics,8,10\r\nPhysics,6,7\r\n");
+
+        assertCourse("Mathematics", "8", "10", reader.readCourse());
+        assertCourse("Physics", "6", "7", reader.readCourse());
+        assertNull(reader.readCourse());
+        assertEquals(3, reader.getLineNumber());
+    }
+
+    @Test
+    public void readsColumnsInHeaderOrder() throws IOException {
+        CourseCsv.Reader reader = reader("Grade, NAME ,credits\n9,Programming,7\n");
+
+        assertCourse("Programming", "7", "9", reader.readCourse());
+        assertNull(reader.readCourse());
+    }
+
+    @Test
+    public void readsPositionalColumnsWithoutHeader() throws IOException {
+        CourseCsv.Reader reader = reader("Mathematics,8,10\n");
+
+        assertCourse("Mathematics", "8", "10", reader.readCourse());
+        assertNull(reader.readCourse());
+    }
+
+    @Test
+    public void trimsNumbersButNotNames() throws IOException {
+        CourseCsv.Reader reader = reader(" Mathematics , 8 ,\t10\n");
+
+        assertCourse(" Mathematics ", "8", "10", reader.readCourse());
+    }
+
+    @Test
+    public void skipsEmptyLines() throws IOException {
+        CourseCsv.Reader reader = reader("\nname,credits,grade\n\nPhysics,6,7\n\n");
+
+        assertCourse("Physics", "6", "7", reader.readCourse());
+        assertNull(reader.readCourse());
+        assertEquals(5, reader.getLineNumber());
+    }
+
+    @Test
+    public void readsQuotedFields() throws IOException {
+        CourseCsv.Reader reader = reader("\"Algebra, \"\"linear\"\"\",\"5\",6\n"
+                + "\"Line\nbreak\",3,8\n"
+                + "\"\",1,6\n");
+
+        assertCourse("Algebra, \"linear\"", "5", "6", reader.readCourse());
+        assertCourse("Line\nbreak", "3", "8", reader.readCourse());
+        assertEquals(3, reader.getLineNumber());
+        assertCourse("", "1", "6", reader.readCourse());
+    }
+
+    @Test
+    public void rejectsMissingColumn() throws IOException {
+        CourseCsv.Reader reader = reader("name,credits,grade\nMathematics,8\n");
+        try {
+            reader.readCourse();
+            fail("Read a course without grade");
+        } catch (CourseCsv.CsvException e) {
+            assertEquals("Missing grade at line 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsUnterminatedQuote() throws IOException {
+        CourseCsv.Reader reader = reader("\"Mathematics,8,10\nPhysics,6,7\n");
+        try {
+            reader.readCourse();
+            fail("Read a course from an unterminated quoted field");
+        } catch (CourseCsv.CsvException e) {
+            assertEquals("Unterminated quoted field at line 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void writtenCoursesReadBack() throws IOException {
+        String[] names = {"Mathematics", "Algebra, linear", "\"Quoted\"", "Line\r\nbreak",
+                "\u010C\u0107\u017E\u0161\u0111"};
+        StringWriter writer = new StringWriter();
+        CourseCsv.writeHeader(writer);
+        for (int i = 0; i < names.length; i++) {
+            CourseCsv.writeCourse(writer, names[i], i + 1, i + 6);
+        }
+
+        CourseCsv.Reader reader = reader(writer.toString());
+        for (int i = 0; i < names.length; i++) {
+            // Line breaks inside a field are read back as a single \n
+            assertCourse(names[i].replace("\r\n", "\n"), Integer.toString(i + 1),
+                    Integer.toString(i + 6), reader.readCourse());
+        }
+        assertNull(reader.readCourse());
+    }
+
+    @Test
+    public void writesHeaderAndQuotesOnlyWhereNeeded() throws IOException {
+        StringWriter writer = new StringWriter();
+        CourseCsv.writeHeader(writer);
+        CourseCsv.writeCourse(writer, "Physics", 6, 7);
+        CourseCsv.writeCourse(writer, "Say \"hi\", please", 2, 9);
+
+        assertEquals("name,credits,grade\r\nPhysics,6,7\r\n\"Say \"\"hi\"\", please\",2,9\r\n",
+                writer.toString());
+    }
+
+    private static CourseCsv.Reader reader(String csv) {
+        return new CourseCsv.Reader(new BufferedReader(new StringReader(csv)));
+    }
+
+    private static void assertCourse(String name, String credit, String grade,
+                                     ContentValues course) {
+        assertEquals(name, course.getAsString(CoursesEntry.COLUMN_COURSE_NAME));
+        assertEquals(credit, course.getAsString(CoursesEntry.COLUMN_COURSE_CREDIT));
+        assertEquals(grade, course.getAsString(CoursesEntry.COLUMN_COURSE_GRADE));
+    }
+}
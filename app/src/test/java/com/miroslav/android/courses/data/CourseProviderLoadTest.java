@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+import com.miroslav.android.courses.data.CourseContract.SummaryEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Load test of {@link CourseProvider} with 100,000 synthetic courses, run on the JVM against
+ * Robolectric's SQLite.
+ * <p>
+ * The caches of the provider are disabled, so every read is timed through SQLite rather than
+ * answered from a result cached by an earlier, identical read.
+ * <p>
+ * Measures the rate of every write path and of the main reads, writes them to
+ * build/reports/load-test/course-provider.json, and fails if any rate falls more than
+ * {@link #TOLERANCE} below its baseline in course-provider-baseline.properties. Run with
+ * -Dcourses.loadTest.record=true to skip the check and write the measured rates as
+ * build/reports/load-test/course-provider-baseline.properties, to be copied over the baselines
+ * once a change is known to be faster.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class CourseProviderLoadTest {
+
+    /**
+     * Courses written by the bulk insert and batch paths
+     */
+    private static final int ROWS = 100000;
+
+    /**
+     * Courses written by single inserts, each its own transaction
+     */
+    private static final int SINGLE_INSERT_ROWS = 10000;
+
+    /**
+     * Courses per bulk insert and per batch
+     */
+    private static final int CHUNK_ROWS = 1000;
+
+    /**
+     * Number of lookups by ID and of summary queries
+     */
+    private static final int LOOKUPS = 10000;
+
+    /**
+     * Number of queries of the whole list
+     */
+    private static final int FULL_QUERIES = 3;
+
+    /**
+     * Fraction a rate may fall below its baseline before the test fails. Recorded runs on one
+     * machine vary by up to 10% for single inserts and by less than 5% for the other paths.
+     */
+    private static final double TOLERANCE = 0.15;
+
+    private static final String RECORD_PROPERTY = "courses.loadTest.record";
+    private static final String BASELINE_RESOURCE = "course-provider-baseline.properties";
+    private static final File REPORT_DIR = new File("build/reports/load-test");
+
+    private static final String[] SUBJECTS = {"Mathematics", "Physics", "Programming",
+            "Databases", "Algorithms", "Operating Systems", "Computer Networks", "Linear Algebra",
+            "Statistics", "Software Engineering", "Compilers", "Computer Graphics",
+            "Distributed Systems", "Machine Learning", "Electronics", "Signals and Systems",
+            "Discrete Mathematics", "Computer Architecture", "English Language", "Economics"};
+
+    private static final String[] PROJECTION = {
+            CoursesEntry._ID,
+            CoursesEntry.COLUMN_COURSE_NAME,
+            CoursesEntry.COLUMN_COURSE_CREDIT,
+            CoursesEntry.COLUMN_COURSE_GRADE};
+
+    /**
+     * Same seed on every run, so every run writes the same transcript
+     */
+    private final Random mRandom = new Random(2017);
+
+    private final Map<String, Result> mResults = new LinkedHashMap<>();
+
+    private CourseProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.buildContentProvider(CourseProvider.class)
+                .create(CourseContract.CONTENT_AUTHORITY).get();
+        mProvider.disableCaches();
+    }
+
+    @Test
+    public void ratesAtOneHundredThousandCourses() throws Exception {
+        warmUp();
+
+        long firstId = measureInsert();
+        measureBulkInsert();
+        int total = SINGLE_INSERT_ROWS + ROWS;
+        measureQueryAll(total);
+        measureQueryById(firstId, total);
+        measureSummary(total);
+        measureDeleteAll(total);
+        measureApplyBatch();
+
+        writeReport();
+        if (Boolean.getBoolean(RECORD_PROPERTY)) {
+            writeBaselines();
+        } else {
+            checkBaselines();
+        }
+    }
+
+    /**
+     * Run every path briefly, so class loading and the first compilation are not measured.
+     */
+    private void warmUp() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            mProvider.insert(CoursesEntry.CONTENT_URI, newCourse());
+        }
+        mProvider.bulkInsert(CoursesEntry.CONTENT_URI, newCourses(CHUNK_ROWS));
+        mProvider.applyBatch(newInserts(CHUNK_ROWS));
+        readAll(mProvider.query(CoursesEntry.CONTENT_URI, PROJECTION, null, null, null));
+        mProvider.query(SummaryEntry.CONTENT_URI, null, null, null, null).close();
+        mProvider.delete(CoursesEntry.CONTENT_URI, null, null);
+    }
+
+    /**
+     * Insert courses one at a time. Return the ID of the first one.
+     */
+    private long measureInsert() {
+        ContentValues[] courses = newCourses(SINGLE_INSERT_ROWS);
+        long firstId = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < courses.length; i++) {
+            Uri uri = mProvider.insert(CoursesEntry.CONTENT_URI, courses[i]);
+            assertNotNull(uri);
+            if (i == 0) {
+                firstId = ContentUris.parseId(uri);
+            }
+        }
+        record("insert", courses.length, start);
+        return firstId;
+    }
+
+    private void measureBulkInsert() {
+        long nanos = 0;
+        for (int rows = 0; rows < ROWS; rows += CHUNK_ROWS) {
+            ContentValues[] chunk = newCourses(CHUNK_ROWS);
+
+            long start = System.nanoTime();
+            assertEquals(CHUNK_ROWS, mProvider.bulkInsert(CoursesEntry.CONTENT_URI, chunk));
+            nanos += System.nanoTime() - start;
+        }
+        mResults.put("bulk_insert", new Result(ROWS, nanos));
+    }
+
+    private void measureApplyBatch() throws Exception {
+        long nanos = 0;
+        for (int rows = 0; rows < ROWS; rows += CHUNK_ROWS) {
+            ArrayList<ContentProviderOperation> batch = newInserts(CHUNK_ROWS);
+
+            long start = System.nanoTime();
+            assertEquals(CHUNK_ROWS, mProvider.applyBatch(batch).length);
+            nanos += System.nanoTime() - start;
+        }
+        mResults.put("apply_batch", new Result(ROWS, nanos));
+    }
+
+    /**
+     * Query and read the whole list a few times. The rate is in courses read per second.
+     */
+    private void measureQueryAll(int total) {
+        long start = System.nanoTime();
+        for (int i = 0; i < FULL_QUERIES; i++) {
+            Cursor cursor = mProvider.query(CoursesEntry.CONTENT_URI, PROJECTION, null, null,
+                    null);
+            assertEquals(total, readAll(cursor));
+        }
+        record("query_all", FULL_QUERIES * total, start);
+    }
+
+    private void measureQueryById(long firstId, int total) {
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            Uri uri = ContentUris.withAppendedId(CoursesEntry.CONTENT_URI,
+                    firstId + mRandom.nextInt(total));
+            assertEquals(1, readAll(mProvider.query(uri, PROJECTION, null, null, null)));
+        }
+        record("query_by_id", LOOKUPS, start);
+    }
+
+    private void measureSummary(int total) {
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            Cursor cursor = mProvider.query(SummaryEntry.CONTENT_URI, null, null, null, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(total, cursor.getInt(
+                        cursor.getColumnIndexOrThrow(SummaryEntry.COLUMN_COURSE_COUNT)));
+            } finally {
+                cursor.close();
+            }
+        }
+        record("summary", LOOKUPS, start);
+    }
+
+    /**
+     * Delete every course at once. The rate is in courses deleted per second.
+     */
+    private void measureDeleteAll(int total) {
+        long start = System.nanoTime();
+        assertEquals(total, mProvider.delete(CoursesEntry.CONTENT_URI, null, null));
+        record("delete_all", total, start);
+    }
+
+    private void record(String name, int operations, long startNanos) {
+        mResults.put(name, new Result(operations, System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Read every column of every row of the given cursor and close it. Return the number of rows.
+     */
+    private static int readAll(Cursor cursor) {
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+                cursor.getString(1);
+                cursor.getInt(2);
+                cursor.getInt(3);
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return a synthetic course: one of 400 names, 1 to 15 credits and a grade from 6 to 10.
+     */
+    private ContentValues newCourse() {
+        ContentValues values = new ContentValues(3);
+        values.put(CoursesEntry.COLUMN_COURSE_NAME,
+                SUBJECTS[mRandom.nextInt(SUBJECTS.length)] + " " + (1 + mRandom.nextInt(20)));
+        values.put(CoursesEntry.COLUMN_COURSE_CREDIT, 1 + mRandom.nextInt(15));
+        values.put(CoursesEntry.COLUMN_COURSE_GRADE, 6 + mRandom.nextInt(5));
+        return values;
+    }
+
+    private ContentValues[] newCourses(int count) {
+        ContentValues[] courses = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            courses[i] = newCourse();
+        }
+        return courses;
+    }
+
+    private ArrayList<ContentProviderOperation> newInserts(int count) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            operations.add(ContentProviderOperation.newInsert(CoursesEntry.CONTENT_URI)
+                    .withValues(newCourse()).build());
+        }
+        return operations;
+    }
+
+    private void writeReport() throws IOException {
+        Properties baselines = loadBaselines();
+        StringBuilder json = new StringBuilder("{\n  \"courses\": ").append(ROWS)
+                .append(",\n  \"tolerance\": ").append(TOLERANCE)
+                .append(",\n  \"results\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Result> entry : mResults.entrySet()) {
+            Result result = entry.getValue();
+            json.append(separator).append(String.format(Locale.US, "    \"%s\": {\"operations\": "
+                            + "%d, \"millis\": %.1f, \"per_second\": %.1f, \"baseline\": %s}",
+                    entry.getKey(), result.mOperations, result.mNanos / 1e6,
+                    result.getRate(), baselines.getProperty(entry.getKey(), "null")));
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        write(new File(REPORT_DIR, "course-provider.json"), json.toString());
+    }
+
+    private void writeBaselines() throws IOException {
+        StringBuilder properties = new StringBuilder(
+                "# Courses per second, recorded by CourseProviderLoadTest\n");
+        for (Map.Entry<String, Result> entry : mResults.entrySet()) {
+            properties.append(entry.getKey()).append('=')
+                    .append(Math.round(entry.getValue().getRate())).append('\n');
+        }
+        write(new File(REPORT_DIR, BASELINE_RESOURCE), properties.toString());
+    }
+
+    private void checkBaselines() throws IOException {
+        Properties baselines = loadBaselines();
+        StringBuilder failures = new StringBuilder();
+        for (Map.Entry<String, Result> entry : mResults.entrySet()) {
+            String baseline = baselines.getProperty(entry.getKey());
+            if (baseline == null) {
+                failures.append("\n  ").append(entry.getKey()).append(": no baseline");
+                continue;
+            }
+
+            double rate = entry.getValue().getRate();
+            double floor = Double.parseDouble(baseline) * (1 - TOLERANCE);
+            if (rate < floor) {
+                failures.append(String.format(Locale.US, "\n  %s: %.1f/s, baseline %s/s",
+                        entry.getKey(), rate, baseline));
+            }
+        }
+        if (failures.length() > 0) {
+            fail("Slower than the baselines in " + BASELINE_RESOURCE + ", see "
+                    + new File(REPORT_DIR, "course-provider.json") + ":" + failures);
+        }
+    }
+
+    private Properties loadBaselines() throws IOException {
+        Properties baselines = new Properties();
+        InputStream in = getClass().getResourceAsStream(BASELINE_RESOURCE);
+        if (in != null) {
+            try {
+                baselines.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return baselines;
+    }
+
+    private static void write(File file, String text) throws IOException {
+        if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Failed to create " + file.getParentFile());
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Number of operations of one measured path and the time they took.
+     */
+    private static final class Result {
+
+        final int mOperations;
+        final long mNanos;
+
+        Result(int operations, long nanos) {
+            mOperations = operations;
+            mNanos = nanos;
+        }
+
+        double getRate() {
+            return mOperations * 1e9 / Math.max(mNanos, 1);
+        }
+    }
+}
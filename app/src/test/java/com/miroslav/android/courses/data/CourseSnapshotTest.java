@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.miroslav.android.courses.data.CourseContract.CoursesEntry;
+import com.miroslav.android.courses.grading.GradeTotals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link CourseSnapshot}, writing snapshots of and restoring them into in-memory
+ * databases holding only the courses table.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class CourseSnapshotTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SQLiteDatabase mSource;
+    private SQLiteDatabase mTarget;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mSource = createDatabase();
+        mTarget = createDatabase();
+        mFile = new File(mFolder.getRoot(), "courses.snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        mSource.close();
+        mTarget.close();
+    }
+
+    @Test
+    public void restoresCoursesWithTheirIds() throws IOException {
+        // Gaps of one to five varint bytes, and more than 127 names for two byte name indexes
+        long[] ids = {1, 2, 130, 20000, 3000000, 5000000000L};
+        GradeTotals totals = new GradeTotals();
+        for (int i = 0; i < ids.length; i++) {
+            insert(mSource, ids[i], "Course " + (i % 2), 1 + i, 6 + i % 5);
+            totals.add(1 + i, 6 + i % 5);
+        }
+        for (int i = 0; i < 200; i++) {
+            insert(mSource, ids[ids.length - 1] + 1 + i, "\u010Cas " + i, 15, 10);
+            totals.add(15, 10);
+        }
+        insert(mTarget, 7, "Replaced", 5, 6);
+
+        assertEquals(ids.length + 200, CourseSnapshot.write(mSource, mFile));
+        GradeTotals restored = CourseSnapshot.restore(mFile, mTarget);
+
+        assertArrayEquals(dump(mSource), dump(mTarget));
+        assertEquals(totals.getCount(), restored.getCount());
+        assertEquals(totals.getGradeSum(), restored.getGradeSum());
+        assertEquals(totals.getCreditSum(), restored.getCreditSum());
+        assertEquals(totals.getWeightedSum(), restored.getWeightedSum());
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void restoresEmptySnapshot() throws IOException {
+        insert(mTarget, 7, "Replaced", 5, 6);
+
+        assertEquals(0, CourseSnapshot.write(mSource, mFile));
+        assertEquals(0, CourseSnapshot.restore(mFile, mTarget).getCount());
+
+        assertEquals(0, DatabaseUtils.queryNumEntries(mTarget, CoursesEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void rejectsChangedByte() throws IOException {
+        writeSnapshot();
+        byte[] bytes = read(mFile);
+        bytes[bytes.length / 2] ^= 0x01;
+        write(mFile, bytes);
+
+        assertRejected();
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws IOException {
+        writeSnapshot();
+        byte[] bytes = read(mFile);
+        write(mFile, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertRejected();
+    }
+
+    @Test
+    public void rejectsTruncatedCoursesWithValidChecksum() throws IOException {
+        writeSnapshot();
+        byte[] bytes = read(mFile);
+        // Drop the last course bytes and seal the rest with a new checksum
+        write(mFile, withCrc(Arrays.copyOf(bytes, bytes.length - 4 - 2)));
+
+        assertRejected();
+    }
+
+    @Test
+    public void rejectsTrailingDataWithValidChecksum() throws IOException {
+        writeSnapshot();
+        byte[] bytes = read(mFile);
+        byte[] body = Arrays.copyOf(bytes, bytes.length - 4 + 1);
+        body[body.length - 1] = 1;
+        write(mFile, withCrc(body));
+
+        assertRejected();
+    }
+
+    @Test
+    public void rejectsOtherFile() throws IOException {
+        write(mFile, withCrc("name,credits,grade\r\n".getBytes("UTF-8")));
+
+        assertRejected();
+    }
+
+    private void writeSnapshot() throws IOException {
+        for (int i = 1; i <= 50; i++) {
+            insert(mSource, i, "Course " + i % 7, 1 + i % 15, 6 + i % 5);
+        }
+        CourseSnapshot.write(mSource, mFile);
+    }
+
+    /**
+     * Check that restoring the snapshot fails and, once rolled back, leaves the target as it was.
+     */
+    private void assertRejected() {
+        insert(mTarget, 7, "Kept", 5, 6);
+        String[] before = dump(mTarget);
+
+        mTarget.beginTransaction();
+        try {
+            CourseSnapshot.restore(mFile, mTarget);
+            fail("Restored an invalid snapshot");
+        } catch (IOException e) {
+            // Expected
+        } finally {
+            mTarget.endTransaction();
+        }
+        assertArrayEquals(before, dump(mTarget));
+    }
+
+    private static SQLiteDatabase createDatabase() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE " + CoursesEntry.TABLE_NAME + " ("
+                + CoursesEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + CoursesEntry.COLUMN_COURSE_NAME + " TEXT NOT NULL, "
+                + CoursesEntry.COLUMN_COURSE_CREDIT + " INTEGER NOT NULL, "
+                + CoursesEntry.COLUMN_COURSE_GRADE + " INTEGER NOT NULL);");
+        return database;
+    }
+
+    private static void insert(SQLiteDatabase database, long id, String name, int credit,
+                               int grade) {
+        ContentValues values = new ContentValues();
+        values.put(CoursesEntry._ID, id);
+        values.put(CoursesEntry.COLUMN_COURSE_NAME, name);
+        values.put(CoursesEntry.COLUMN_COURSE_CREDIT, credit);
+        values.put(CoursesEntry.COLUMN_COURSE_GRADE, grade);
+        database.insertOrThrow(CoursesEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Return every course of the given database as text, ordered by ID.
+     */
+    private static String[] dump(SQLiteDatabase database) {
+        Cursor cursor = database.query(CoursesEntry.TABLE_NAME, null, null, null, null, null,
+                CoursesEntry._ID);
+        try {
+            String[] rows = new String[cursor.getCount()];
+            while (cursor.moveToNext()) {
+                rows[cursor.getPosition()] = cursor.getLong(0) + "|" + cursor.getString(1) + "|"
+                        + cursor.getInt(2) + "|" + cursor.getInt(3);
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the given bytes followed by their CRC32, as the snapshot format ends.
+     */
+    private static byte[] withCrc(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return ByteBuffer.allocate(body.length + 4).put(body).putInt((int) crc.getValue()).array();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.grading;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of validating and aggregating transcripts of 10^3 to 10^7 courses. Run with
+ * "./gradlew :grading:jmh"; the gc profiler reports the allocation per operation next to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GradeTotalsBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int courseCount;
+
+    private List<Course> mCourses;
+    private int[] mCredits;
+    private int[] mGrades;
+    private GradeTotals mTotals;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        // Fixed seed, so every run measures the same transcript
+        Random random = new Random(42);
+        mCourses = new ArrayList<>(courseCount);
+        mCredits = new int[courseCount];
+        mGrades = new int[courseCount];
+        for (int i = 0; i < courseCount; i++) {
+            mCredits[i] = CourseRules.MIN_CREDIT
+                    + random.nextInt(CourseRules.MAX_CREDIT - CourseRules.MIN_CREDIT + 1);
+            mGrades[i] = CourseRules.MIN_GRADE
+                    + random.nextInt(CourseRules.MAX_GRADE - CourseRules.MIN_GRADE + 1);
+            mCourses.add(new Course(i + 1, "Course " + (i % 500), mCredits[i], mGrades[i]));
+        }
+        mTotals = GradeTotals.of(mCredits, mGrades, courseCount);
+    }
+
+    @Benchmark
+    public double aggregateRecords() {
+        return GradeTotals.of(mCourses).getWeightedAverageGrade();
+    }
+
+    @Benchmark
+    public double aggregateColumns() {
+        return GradeTotals.of(mCredits, mGrades, courseCount).getWeightedAverageGrade();
+    }
+
+    @Benchmark
+    public int validate() {
+        int valid = 0;
+        for (int i = 0; i < courseCount; i++) {
+            if (CourseRules.isValidCredit(mCredits[i]) && CourseRules.isValidGrade(mGrades[i])) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Regrade one course and read the averages, as the provider does on every edit. Should not
+     * depend on the number of courses.
+     */
+    @Benchmark
+    public double updateIncrementally() {
+        int i = mNext;
+        mNext = (i + 1) % courseCount;
+        int grade = mGrades[i] == CourseRules.MAX_GRADE ? CourseRules.MIN_GRADE : mGrades[i] + 1;
+        mTotals.remove(mCredits[i], mGrades[i]);
+        mTotals.add(mCredits[i], grade);
+        mGrades[i] = grade;
+        return mTotals.getAverageGrade() + mTotals.getWeightedAverageGrade();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.grading;
+
+/**
+ * {@link Course} is an immutable course record: a name, the credits it is worth and the grade it
+ * was passed with.
+ */
+public final class Course {
+
+    private final long mId;
+    private final String mName;
+    private final int mCredit;
+    private final int mGrade;
+
+    /**
+     * Constructs a new {@link Course}.
+     *
+     * @throws IllegalArgumentException if the course breaks the {@link CourseRules}
+     */
+    public Course(long id, String name, int credit, int grade) {
+        CourseRules.checkName(name);
+        CourseRules.checkCredit(credit);
+        CourseRules.checkGrade(grade);
+        mId = id;
+        mName = name;
+        mCredit = credit;
+        mGrade = grade;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getCredit() {
+        return mCredit;
+    }
+
+    public int getGrade() {
+        return mGrade;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Course)) {
+            return false;
+        }
+        Course other = (Course) o;
+        return mId == other.mId && mCredit == other.mCredit && mGrade == other.mGrade
+                && mName.equals(other.mName);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mId ^ (mId >>> 32));
+        result = 31 * result + mName.hashCode();
+        result = 31 * result + mCredit;
+        result = 31 * result + mGrade;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Course{id=" + mId + ", name=" + mName + ", credit=" + mCredit + ", grade=" + mGrade
+                + "}";
+    }
+}
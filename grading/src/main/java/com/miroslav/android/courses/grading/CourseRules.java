@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.grading;
+
+/**
+ * Rules every stored course has to follow.
+ */
+public final class CourseRules {
+
+    /**
+     * Range of the credits (ECTS) a course can be worth
+     */
+    public static final int MIN_CREDIT = 1;
+    public static final int MAX_CREDIT = 15;
+
+    /**
+     * Range of passing grades, from 6 (sufficient) to 10 (excellent)
+     */
+    public static final int MIN_GRADE = 6;
+    public static final int MAX_GRADE = 10;
+
+    private CourseRules() {
+    }
+
+    public static boolean isValidCredit(int credit) {
+        return credit >= MIN_CREDIT && credit <= MAX_CREDIT;
+    }
+
+    public static boolean isValidGrade(int grade) {
+        return grade >= MIN_GRADE && grade <= MAX_GRADE;
+    }
+
+    /**
+     * Check that a course has a name.
+     *
+     * @throws IllegalArgumentException if the name is null
+     */
+    public static void checkName(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Course requires a name");
+        }
+    }
+
+    /**
+     * Check that a course has valid credits.
+     *
+     * @throws IllegalArgumentException if the credits are null or out of range
+     */
+    public static void checkCredit(Integer credit) {
+        if (credit == null || !isValidCredit(credit)) {
+            throw new IllegalArgumentException("Course requires valid credit");
+        }
+    }
+
+    /**
+     * Check that a course has a valid grade.
+     *
+     * @throws IllegalArgumentException if the grade is null or out of range
+     */
+    public static void checkGrade(Integer grade) {
+        if (grade == null || !isValidGrade(grade)) {
+            throw new IllegalArgumentException("Course requires valid grade");
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.grading;
+
+/**
+ * Running totals over a set of courses: their number and the sums of grades, credits and
+ * grade * credits. Courses can be added, removed and regraded one at a time, each applying only
+ * its delta, and the plain and credit-weighted averages and the credit total are read in constant
+ * time from the sums.
+ * <p>
+ * Not thread safe, callers guard shared instances themselves.
+ */
+public final class GradeTotals {
+
+    private long mCount;
+    private long mGradeSum;
+    private long mCreditSum;
+    private long mWeightedSum;
+
+    /**
+     * Constructs new {@link GradeTotals} without any courses.
+     */
+    public GradeTotals() {
+    }
+
+    /**
+     * Constructs new {@link GradeTotals} from previously computed sums.
+     */
+    public GradeTotals(long count, long gradeSum, long creditSum, long weightedSum) {
+        mCount = count;
+        mGradeSum = gradeSum;
+        mCreditSum = creditSum;
+        mWeightedSum = weightedSum;
+    }
+
+    /**
+     * Return the totals of the given courses.
+     */
+    public static GradeTotals of(Iterable<Course> courses) {
+        GradeTotals totals = new GradeTotals();
+        for (Course course : courses) {
+            totals.add(course.getCredit(), course.getGrade());
+        }
+        return totals;
+    }
+
+    /**
+     * Return the totals of the first count courses of the given columns.
+     */
+    public static GradeTotals of(int[] credits, int[] grades, int count) {
+        long gradeSum = 0;
+        long creditSum = 0;
+        long weightedSum = 0;
+        for (int i = 0; i < count; i++) {
+            gradeSum += grades[i];
+            creditSum += credits[i];
+            weightedSum += grades[i] * credits[i];
+        }
+        return new GradeTotals(count, gradeSum, creditSum, weightedSum);
+    }
+
+    /**
+     * Account for a course with the given credits and grade.
+     */
+    public void add(int credit, int grade) {
+        mCount++;
+        mGradeSum += grade;
+        mCreditSum += credit;
+        mWeightedSum += grade * credit;
+    }
+
+    /**
+     * Stop accounting for a course with the given credits and grade.
+     */
+    public void remove(int credit, int grade) {
+        mCount--;
+        mGradeSum -= grade;
+        mCreditSum -= credit;
+        mWeightedSum -= grade * credit;
+    }
+
+    /**
+     * Return the totals of the same courses once their credits, grade or both are set to the given
+     * values, null keeping the current ones. The new sums follow from the old ones: with every
+     * grade set to g, the grade sum becomes count * g and the weighted sum g * credit sum, and
+     * likewise for the credits.
+     */
+    public GradeTotals withValues(Integer credit, Integer grade) {
+        long gradeSum = grade != null ? mCount * grade : mGradeSum;
+        long creditSum = credit != null ? mCount * credit : mCreditSum;
+        long weightedSum;
+        if (grade != null && credit != null) {
+            weightedSum = mCount * grade * credit;
+        } else if (grade != null) {
+            weightedSum = grade * mCreditSum;
+        } else if (credit != null) {
+            weightedSum = credit * mGradeSum;
+        } else {
+            weightedSum = mWeightedSum;
+        }
+        return new GradeTotals(mCount, gradeSum, creditSum, weightedSum);
+    }
+
+    /**
+     * Reset to no courses.
+     */
+    public void clear() {
+        mCount = 0;
+        mGradeSum = 0;
+        mCreditSum = 0;
+        mWeightedSum = 0;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getGradeSum() {
+        return mGradeSum;
+    }
+
+    /**
+     * Return the sum of the credits, which are ECTS credits earned: only passing grades are
+     * stored, see {@link CourseRules#MIN_GRADE}.
+     */
+    public long getCreditSum() {
+        return mCreditSum;
+    }
+
+    public long getWeightedSum() {
+        return mWeightedSum;
+    }
+
+    /**
+     * Return the average grade, or NaN without courses.
+     */
+    public double getAverageGrade() {
+        return mCount > 0 ? (double) mGradeSum / mCount : Double.NaN;
+    }
+
+    /**
+     * Return the average grade weighted by credits, or NaN without courses. Every course has at
+     * least one credit, so the credit sum is positive whenever there are courses.
+     */
+    public double getWeightedAverageGrade() {
+        return mCount > 0 ? (double) mWeightedSum / mCreditSum : Double.NaN;
+    }
+}
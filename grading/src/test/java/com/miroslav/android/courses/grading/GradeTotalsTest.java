@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.miroslav.android.courses.grading;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link GradeTotals}, checking the sums kept one course at a time and derived by
+ * {@link GradeTotals#withValues} against totals recomputed from the courses.
+ */
+public class GradeTotalsTest {
+
+    private static final List<Course> COURSES = Arrays.asList(
+            new Course(1, "Mathematics 1", 8, 10),
+            new Course(2, "Physics", 6, 7),
+            new Course(3, "Programming", 7, 9),
+            new Course(4, "English", 2, 6));
+
+    @Test
+    public void emptyTotalsHaveNoAverage() {
+        GradeTotals totals = new GradeTotals();
+
+        assertSums(0, 0, 0, 0, totals);
+        assertTrue(Double.isNaN(totals.getAverageGrade()));
+        assertTrue(Double.isNaN(totals.getWeightedAverageGrade()));
+    }
+
+    @Test
+    public void ofCoursesSumsEveryCourse() {
+        GradeTotals totals = GradeTotals.of(COURSES);
+
+        assertSums(4, 32, 23, 80 + 42 + 63 + 12, totals);
+        assertEquals(8.0, totals.getAverageGrade(), 0);
+        assertEquals(197.0 / 23, totals.getWeightedAverageGrade(), 1e-12);
+    }
+
+    @Test
+    public void ofColumnsMatchesOfCourses() {
+        int[] credits = new int[COURSES.size() + 1];
+        int[] grades = new int[COURSES.size() + 1];
+        for (int i = 0; i < COURSES.size(); i++) {
+            credits[i] = COURSES.get(i).getCredit();
+            grades[i] = COURSES.get(i).getGrade();
+        }
+        // Entries past the count are ignored
+        credits[COURSES.size()] = 15;
+        grades[COURSES.size()] = 10;
+
+        assertTotals(GradeTotals.of(COURSES), GradeTotals.of(credits, grades, COURSES.size()));
+    }
+
+    @Test
+    public void removeUndoesAdd() {
+        GradeTotals totals = GradeTotals.of(COURSES);
+        totals.add(15, 9);
+        totals.remove(15, 9);
+
+        assertTotals(GradeTotals.of(COURSES), totals);
+    }
+
+    @Test
+    public void clearRemovesEveryCourse() {
+        GradeTotals totals = GradeTotals.of(COURSES);
+        totals.clear();
+
+        assertSums(0, 0, 0, 0, totals);
+    }
+
+    @Test
+    public void withValuesKeepsSumsWithoutValues() {
+        GradeTotals totals = GradeTotals.of(COURSES);
+
+        assertTotals(totals, totals.withValues(null, null));
+    }
+
+    @Test
+    public void withValuesSetsCredits() {
+        assertTotals(recompute(5, null), GradeTotals.of(COURSES).withValues(5, null));
+    }
+
+    @Test
+    public void withValuesSetsGrades() {
+        assertTotals(recompute(null, 9), GradeTotals.of(COURSES).withValues(null, 9));
+    }
+
+    @Test
+    public void withValuesSetsCreditsAndGrades() {
+        assertTotals(recompute(15, 10), GradeTotals.of(COURSES).withValues(15, 10));
+    }
+
+    @Test
+    public void withValuesOfNoCoursesIsEmpty() {
+        assertSums(0, 0, 0, 0, new GradeTotals().withValues(15, 10));
+    }
+
+    @Test
+    public void withValuesDoesNotChangeTheTotals() {
+        GradeTotals totals = GradeTotals.of(COURSES);
+        totals.withValues(1, 6);
+
+        assertTotals(GradeTotals.of(COURSES), totals);
+    }
+
+    @Test
+    public void withValuesDoesNotOverflowLargeSums() {
+        // 10^8 courses of one credit graded 6, set to 15 credits graded 10, overflow an int
+        GradeTotals totals = new GradeTotals(100000000, 600000000, 100000000, 600000000);
+
+        assertSums(100000000, 1000000000, 1500000000, 15000000000L, totals.withValues(15, 10));
+    }
+
+    /**
+     * Return the totals of {@link #COURSES} recomputed one course at a time once their credits,
+     * grade or both are set to the given values, null keeping the current ones.
+     */
+    private static GradeTotals recompute(Integer credit, Integer grade) {
+        List<Course> courses = new ArrayList<>();
+        for (Course course : COURSES) {
+            courses.add(new Course(course.getId(), course.getName(),
+                    credit != null ? credit : course.getCredit(),
+                    grade != null ? grade : course.getGrade()));
+        }
+        return GradeTotals.of(courses);
+    }
+
+    private static void assertTotals(GradeTotals expected, GradeTotals actual) {
+        assertSums(expected.getCount(), expected.getGradeSum(), expected.getCreditSum(),
+                expected.getWeightedSum(), actual);
+    }
+
+    private static void assertSums(long count, long gradeSum, long creditSum, long weightedSum,
+                                   GradeTotals actual) {
+        assertEquals("count", count, actual.getCount());
+        assertEquals("grade sum", gradeSum, actual.getGradeSum());
+        assertEquals("credit sum", creditSum, actual.getCreditSum());
+        assertEquals("weighted sum", weightedSum, actual.getWeightedSum());
+    }
+}